@@ -0,0 +1,209 @@
+package invtweaks;
+
+import invtweaks.api.container.ContainerSection;
+import invtweaks.container.IContainerManager;
+import net.minecraft.inventory.Container;
+import net.minecraft.inventory.Slot;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A container made of a single CHEST section, backed by an array of stacks, with no real slots behind it. Moves and
+ * clicks follow the vanilla rules, without slot restrictions.
+ */
+class ArrayContainerManager implements IContainerManager {
+    @NotNull
+    private final ItemStack[] stacks;
+    @NotNull
+    private ItemStack heldStack = ItemStack.EMPTY;
+
+    ArrayContainerManager(int size) {
+        stacks = new ItemStack[size];
+        for(int i = 0; i < size; i++) {
+            stacks[i] = ItemStack.EMPTY;
+        }
+    }
+
+    private static boolean canMerge(@NotNull ItemStack stack1, @NotNull ItemStack stack2) {
+        return !stack1.isEmpty() && !stack2.isEmpty() && stack1.getItem() == stack2.getItem() && stack1.getMetadata() == stack2.getMetadata() && ItemStack.areItemStackTagsEqual(stack1, stack2);
+    }
+
+    /**
+     * Replaces the content of the container with copies of the given stacks.
+     */
+    void setStacks(@NotNull ItemStack[] stacks_) {
+        for(int i = 0; i < stacks.length; i++) {
+            stacks[i] = stacks_[i].copy();
+        }
+        heldStack = ItemStack.EMPTY;
+    }
+
+    @Override
+    public boolean move(ContainerSection srcSection, int srcIndex, ContainerSection destSection, int destIndex) {
+        @NotNull ItemStack src = stacks[srcIndex], dest = stacks[destIndex];
+        if(src.isEmpty()) {
+            return false;
+        } else if(srcIndex == destIndex) {
+            return true;
+        }
+
+        if(canMerge(src, dest)) {
+            int amount = Math.min(src.getCount(), src.getMaxStackSize() - dest.getCount());
+            if(amount > 0) {
+                dest.grow(amount);
+                src.shrink(amount);
+                if(src.isEmpty()) {
+                    stacks[srcIndex] = ItemStack.EMPTY;
+                }
+            }
+        } else {
+            stacks[srcIndex] = dest;
+            stacks[destIndex] = src;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean moveSome(ContainerSection srcSection, int srcIndex, ContainerSection destSection, int destIndex, int amount) {
+        @NotNull ItemStack src = stacks[srcIndex], dest = stacks[destIndex];
+        if(src.isEmpty() || srcIndex == destIndex) {
+            return true;
+        } else if(!dest.isEmpty() && !canMerge(src, dest)) {
+            return false;
+        }
+
+        int moved = Math.min(Math.min(amount, src.getCount()), src.getMaxStackSize() - dest.getCount());
+        if(moved > 0) {
+            if(dest.isEmpty()) {
+                stacks[destIndex] = src.splitStack(moved);
+            } else {
+                dest.grow(moved);
+                src.shrink(moved);
+            }
+            if(src.isEmpty()) {
+                stacks[srcIndex] = ItemStack.EMPTY;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean putHoldItemDown(ContainerSection destSection, int destIndex) {
+        if(!heldStack.isEmpty()) {
+            if(stacks[destIndex].isEmpty()) {
+                click(destSection, destIndex, false);
+                return true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void click(ContainerSection section, int index, boolean rightClick) {
+        @NotNull ItemStack stack = stacks[index];
+        if(stack.isEmpty()) {
+            if(!heldStack.isEmpty()) {
+                stacks[index] = heldStack.splitStack(rightClick ? 1 : heldStack.getCount());
+            }
+        } else if(heldStack.isEmpty()) {
+            heldStack = stack.splitStack(rightClick ? (stack.getCount() + 1) / 2 : stack.getCount());
+        } else if(canMerge(stack, heldStack)) {
+            int amount = Math.min(rightClick ? 1 : heldStack.getCount(), stack.getMaxStackSize() - stack.getCount());
+            if(amount > 0) {
+                stack.grow(amount);
+                heldStack.shrink(amount);
+            }
+        } else {
+            stacks[index] = heldStack;
+            heldStack = stack;
+        }
+
+        if(stacks[index].isEmpty()) {
+            stacks[index] = ItemStack.EMPTY;
+        }
+        if(heldStack.isEmpty()) {
+            heldStack = ItemStack.EMPTY;
+        }
+    }
+
+    @Override
+    public boolean hasSection(ContainerSection section) {
+        return section == ContainerSection.CHEST;
+    }
+
+    @Override
+    public List<Slot> getSlots(ContainerSection section) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getSize() {
+        return stacks.length;
+    }
+
+    @Override
+    public int getSize(ContainerSection section) {
+        return hasSection(section) ? stacks.length : 0;
+    }
+
+    @Override
+    public int getFirstEmptyIndex(ContainerSection section) {
+        if(hasSection(section)) {
+            for(int i = 0; i < stacks.length; i++) {
+                if(stacks[i].isEmpty()) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean isSlotEmpty(ContainerSection section, int slot) {
+        return hasSection(section) && stacks[slot].isEmpty();
+    }
+
+    @Nullable
+    @Override
+    public Slot getSlot(ContainerSection section, int index) {
+        return null;
+    }
+
+    @Override
+    public int getSlotIndex(int slotNumber, boolean preferInventory) {
+        return (slotNumber >= 0 && slotNumber < stacks.length) ? slotNumber : -1;
+    }
+
+    @Nullable
+    @Override
+    public ContainerSection getSlotSection(int slotNumber) {
+        return (slotNumber >= 0 && slotNumber < stacks.length) ? ContainerSection.CHEST : null;
+    }
+
+    @NotNull
+    @Override
+    public ItemStack getItemStack(ContainerSection section, int index) {
+        return hasSection(section) ? stacks[index] : ItemStack.EMPTY;
+    }
+
+    @NotNull
+    @Override
+    public ItemStack getHeldStack() {
+        return heldStack;
+    }
+
+    @Nullable
+    @Override
+    public Container getContainer() {
+        return null;
+    }
+
+    @Override
+    public void applyChanges() {
+    }
+}
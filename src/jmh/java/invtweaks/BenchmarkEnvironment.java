@@ -0,0 +1,116 @@
+package invtweaks;
+
+import net.minecraft.init.Bootstrap;
+import net.minecraft.init.Items;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * What the benchmarks need from the game, without starting it: vanilla registries, the bundled item tree, and stacks
+ * that are the same from one run to the next.
+ */
+final class BenchmarkEnvironment {
+    /**
+     * Number of distinct items used in random containers, low enough for stacks to merge.
+     */
+    private static final int ITEM_POOL_SIZE = 40;
+
+    private static boolean initialized = false;
+    private static InvTweaksConfig config = null;
+
+    private BenchmarkEnvironment() {
+    }
+
+    static synchronized void init() {
+        if(!initialized) {
+            // Must be set before any class keeping a copy of it is loaded
+            if(InvTweaks.log == null) {
+                InvTweaks.log = LogManager.getLogger("InventoryTweaks");
+            }
+            Bootstrap.register();
+            initialized = true;
+        }
+    }
+
+    /**
+     * @return A copy of the bundled itemtree.xml, the tree loader only reads files.
+     */
+    @NotNull
+    static File extractTree() throws IOException {
+        @NotNull File file = File.createTempFile("itemtree", ".xml");
+        file.deleteOnExit();
+        try(InputStream input = BenchmarkEnvironment.class.getResourceAsStream("/assets/inventorytweaks/itemtree.xml")) {
+            if(input == null) {
+                throw new FileNotFoundException("itemtree.xml");
+            }
+            Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * @return A configuration with the bundled tree and no rules. An InvTweaks instance using it is created as well,
+     * for comparisons.
+     */
+    @NotNull
+    static synchronized InvTweaksConfig getConfig() throws Exception {
+        if(config == null) {
+            init();
+
+            @NotNull File rulesFile = File.createTempFile("rules", ".txt");
+            rulesFile.deleteOnExit();
+            config = new InvTweaksConfig(rulesFile, extractTree());
+            config.loadTreeAndRules();
+
+            new InvTweaks(new InvTweaksConfigManager(config));
+        }
+        return config;
+    }
+
+    /**
+     * @param fillRatio Part of the slots that are not empty
+     * @return Random stacks, always the same ones for a given seed.
+     */
+    @NotNull
+    static ItemStack[] randomStacks(int size, double fillRatio, long seed) {
+        @NotNull Random random = new Random(seed);
+
+        // Registry iteration follows ids, so the pool only depends on the seed
+        @NotNull List<Item> items = new ArrayList<>();
+        for(@NotNull Item item : Item.REGISTRY) {
+            if(item != Items.AIR) {
+                items.add(item);
+            }
+        }
+        Collections.shuffle(items, random);
+        @NotNull List<Item> pool = items.subList(0, Math.min(ITEM_POOL_SIZE, items.size()));
+
+        @NotNull ItemStack[] stacks = new ItemStack[size];
+        for(int i = 0; i < size; i++) {
+            if(random.nextDouble() < fillRatio) {
+                @NotNull ItemStack stack = new ItemStack(pool.get(random.nextInt(pool.size())));
+                stack.setCount(1 + random.nextInt(stack.getMaxStackSize()));
+                if(stack.isItemStackDamageable()) {
+                    stack.setItemDamage(random.nextInt(stack.getMaxDamage()));
+                }
+                stacks[i] = stack;
+            } else {
+                stacks[i] = ItemStack.EMPTY;
+            }
+        }
+        return stacks;
+    }
+}
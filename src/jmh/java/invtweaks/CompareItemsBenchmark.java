@@ -0,0 +1,51 @@
+package invtweaks;
+
+import net.minecraft.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item comparisons as done while sorting, over pairs of random stacks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CompareItemsBenchmark {
+    private static final int PAIRS = 1024;
+
+    private InvTweaks invTweaks;
+    private ItemStack[] first;
+    private ItemStack[] second;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkEnvironment.getConfig();
+        invTweaks = InvTweaks.getInstance();
+        first = BenchmarkEnvironment.randomStacks(PAIRS, 1, 1);
+        second = BenchmarkEnvironment.randomStacks(PAIRS, 1, 2);
+    }
+
+    /**
+     * One operation compares all pairs.
+     */
+    @Benchmark
+    public void compareItems(Blackhole blackhole) {
+        for(int i = 0; i < PAIRS; i++) {
+            blackhole.consume(invTweaks.compareItems(first[i], second[i]));
+        }
+    }
+}
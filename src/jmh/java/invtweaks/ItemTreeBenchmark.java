@@ -0,0 +1,92 @@
+package invtweaks;
+
+import invtweaks.api.IItemTreeCategory;
+import invtweaks.api.IItemTreeItem;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the bundled item tree, and the lookups done on it for every stack while sorting.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ItemTreeBenchmark {
+    private static final int STACKS = 256;
+
+    private File treeFile;
+    private InvTweaksItemTree tree;
+    private ItemStack[] stacks;
+    private List<List<IItemTreeItem>> items;
+    private String[] keywords;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkEnvironment.init();
+        treeFile = BenchmarkEnvironment.extractTree();
+        tree = load();
+        stacks = BenchmarkEnvironment.randomStacks(STACKS, 1, 3);
+
+        items = new ArrayList<>(STACKS);
+        for(@NotNull ItemStack stack : stacks) {
+            items.add(lookup(stack));
+        }
+
+        @NotNull List<String> names = new ArrayList<>();
+        for(@NotNull IItemTreeCategory category : tree.getAllCategories()) {
+            names.add(category.getName());
+        }
+        keywords = names.toArray(new String[0]);
+    }
+
+    private List<IItemTreeItem> lookup(@NotNull ItemStack stack) {
+        return tree.getMatchingItems(stack.getItem().getRegistryName().toString(), stack.getItemDamage(), stack.getTagCompound());
+    }
+
+    @Benchmark
+    @NotNull
+    public InvTweaksItemTree load() throws Exception {
+        return InvTweaksItemTreeLoader.load(treeFile);
+    }
+
+    /**
+     * One operation looks up all stacks.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void getItems(Blackhole blackhole) {
+        for(@NotNull ItemStack stack : stacks) {
+            blackhole.consume(lookup(stack));
+        }
+    }
+
+    /**
+     * One operation matches all stacks against one category each.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void matches(Blackhole blackhole) {
+        for(int i = 0; i < STACKS; i++) {
+            blackhole.consume(tree.matches(items.get(i), keywords[i % keywords.length]));
+        }
+    }
+}
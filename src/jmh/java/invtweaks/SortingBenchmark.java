@@ -0,0 +1,60 @@
+package invtweaks;
+
+import invtweaks.api.SortingMethod;
+import invtweaks.api.container.ContainerSection;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts a randomly filled chest, from the move planning to the moves themselves, on an in-memory container.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SortingBenchmark {
+    @Param({"27", "54", "108"})
+    public int slots;
+
+    @Param({"DEFAULT", "HORIZONTAL"})
+    public SortingMethod algorithm;
+
+    private InvTweaksConfig config;
+    private ItemStack[] stacks;
+    private ArrayContainerManager container;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        config = BenchmarkEnvironment.getConfig();
+        stacks = BenchmarkEnvironment.randomStacks(slots, 0.8, 42);
+        container = new ArrayContainerManager(slots);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetContainer() {
+        container.setStacks(stacks);
+    }
+
+    @Benchmark
+    @NotNull
+    public ArrayContainerManager sort() throws Exception {
+        new InvTweaksHandlerSorting(null, config, container, ContainerSection.CHEST, algorithm, 9).sort();
+        return container;
+    }
+}
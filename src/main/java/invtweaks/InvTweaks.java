@@ -1,6 +1,5 @@
 package invtweaks;
 
-import com.google.common.collect.Multimap;
 import invtweaks.api.IItemTree;
 import invtweaks.api.IItemTreeItem;
 import invtweaks.api.SortingMethod;
@@ -8,6 +7,7 @@ import invtweaks.api.container.ContainerSection;
 import invtweaks.container.ContainerSectionManager;
 import invtweaks.container.DirectContainerManager;
 import invtweaks.container.IContainerManager;
+import invtweaks.container.MirroredContainerManager;
 import invtweaks.forge.InvTweaksMod;
 import invtweaks.integration.ItemListChecker;
 import net.minecraft.client.Minecraft;
@@ -18,14 +18,9 @@ import net.minecraft.client.gui.inventory.GuiContainer;
 import net.minecraft.client.gui.inventory.GuiCrafting;
 import net.minecraft.client.gui.inventory.GuiInventory;
 import net.minecraft.client.resources.I18n;
-import net.minecraft.enchantment.Enchantment;
-import net.minecraft.enchantment.EnchantmentHelper;
-import net.minecraft.entity.SharedMonsterAttributes;
-import net.minecraft.entity.ai.attributes.AttributeModifier;
 import net.minecraft.init.Items;
 import net.minecraft.init.SoundEvents;
 import net.minecraft.inventory.Container;
-import net.minecraft.inventory.EntityEquipmentSlot;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.*;
 import net.minecraft.util.NonNullList;
@@ -36,7 +31,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.LWJGLException;
 import org.lwjgl.input.Keyboard;
-import org.lwjgl.input.Mouse;
 import org.lwjgl.opengl.Display;
 
 import java.util.*;
@@ -82,6 +76,11 @@ public class InvTweaks extends InvTweaksObfuscation {
     private String storedStackId = null;
     private int storedStackDamage = InvTweaksConst.DAMAGE_WILDCARD, storedFocusedSlot = -1;
     private boolean hadFocus = true, mouseWasDown = false;
+    /**
+     * Keys and mouse buttons currently down, updated from input events.
+     */
+    @NotNull
+    private final InvTweaksInputState input = new InvTweaksInputState();
     private boolean wasInGUI = false;
     private boolean previousRecipeBookVisibility = false;
     /**
@@ -102,6 +101,13 @@ public class InvTweaks extends InvTweaksObfuscation {
      */
     private String mostRecentComparison = "";
     private boolean debugTree = false;
+    /**
+     * Precomputed comparison data, valid for the item tree it was computed with.
+     */
+    @NotNull
+    private final InvTweaksSortKey.Cache sortKeys = new InvTweaksSortKey.Cache();
+    @Nullable
+    private IItemTree sortKeyTree = null;
 
     /**
      * Creates an instance of the mod, and loads the configuration from the files, creating them if necessary.
@@ -126,6 +132,20 @@ public class InvTweaks extends InvTweaksObfuscation {
         }
     }
 
+    /**
+     * Creates an instance without a game, for the sorting and comparison code only. Used by benchmarks.
+     */
+    InvTweaks(@NotNull InvTweaksConfigManager cfgManager_) {
+        super(null);
+
+        for(int i = 0; i < hotbarClone.length; ++i) {
+            hotbarClone[i] = ItemStack.EMPTY;
+        }
+
+        instance = this;
+        cfgManager = cfgManager_;
+    }
+
     public static void logInGameStatic(@NotNull String message) {
         InvTweaks.getInstance().logInGame(message);
     }
@@ -141,6 +161,11 @@ public class InvTweaks extends InvTweaksObfuscation {
         return instance;
     }
 
+    @NotNull
+    public InvTweaksInputState getInputState() {
+        return input;
+    }
+
     public static Minecraft getMinecraftInstance() {
         return instance.mc;
     }
@@ -153,12 +178,13 @@ public class InvTweaks extends InvTweaksObfuscation {
 
     @NotNull
     public static IContainerManager getContainerManager(@NotNull Container container) {
-        // TODO: Reenable when it doesn't just break everything
-        //if(getConfigManager().getConfig().getProperty(InvTweaksConfig.PROP_ENABLE_CONTAINER_MIRRORING).equals(InvTweaksConfig.VALUE_TRUE)) {
-        //    return new MirroredContainerManager(container);
-        //} else {
-        return new DirectContainerManager(container);
-        //}
+        @Nullable InvTweaksConfigManager configManager = getConfigManager();
+        @Nullable InvTweaksConfig config = (configManager != null) ? configManager.getConfig() : null;
+        if(config != null && config.getProperty(InvTweaksConfig.PROP_ENABLE_CONTAINER_MIRRORING).equals(InvTweaksConfig.VALUE_TRUE)) {
+            return new MirroredContainerManager(container);
+        } else {
+            return new DirectContainerManager(container);
+        }
     }
 
     @NotNull
@@ -195,21 +221,17 @@ public class InvTweaks extends InvTweaksObfuscation {
         return InvTweaksConst.INGAME_LOG_PREFIX + ((level.equals(Level.SEVERE)) ? "[ERROR] " : "") + message;
     }
 
-    private static int compareMaxDamage(ItemStack i, ItemStack j) {
+    private static int compareMaxDamage(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
         //Use durability to sort, favoring more durable items.
-        int maxDamage1 = i.getMaxDamage() <= 0 ? Integer.MAX_VALUE : i.getMaxDamage();
-        int maxDamage2 = j.getMaxDamage() <= 0 ? Integer.MAX_VALUE : j.getMaxDamage();
-        return maxDamage2 - maxDamage1;
+        return j.maxDamage - i.maxDamage;
     }
 
-    private static int compareCurDamage(ItemStack i, ItemStack j) {
+    private static int compareCurDamage(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
         //Use remaining durability to sort, favoring more damaged.
-        int curDamage1 = i.getItemDamage();
-        int curDamage2 = j.getItemDamage();
-        if(i.isItemStackDamageable() && !getConfigManager().getConfig().getProperty(InvTweaksConfig.PROP_INVERT_TOOL_DAMAGE).equals(InvTweaksConfig.VALUE_TRUE)) {
-            return curDamage2 - curDamage1;
+        if(i.damageable && !getConfigManager().getConfig().getProperty(InvTweaksConfig.PROP_INVERT_TOOL_DAMAGE).equals(InvTweaksConfig.VALUE_TRUE)) {
+            return j.itemDamage - i.itemDamage;
         } else {
-            return curDamage1 - curDamage2;
+            return i.itemDamage - j.itemDamage;
         }
     }
 
@@ -411,11 +433,15 @@ public class InvTweaks extends InvTweaksObfuscation {
     }
 
     public int compareItems(@NotNull ItemStack i, @NotNull ItemStack j) {
-        return compareItems(i, j, getItemOrder(i), getItemOrder(j), false);
+        return compareItems(i, j, false);
     }
 
     public int compareItems(@NotNull ItemStack i, @NotNull ItemStack j, boolean onlyTreeSort) {
-        return compareItems(i, j, getItemOrder(i), getItemOrder(j), onlyTreeSort);
+        if(i.isEmpty() || j.isEmpty()) {
+            return compareItems(i, j, -1, -1, onlyTreeSort);
+        }
+        @NotNull InvTweaksSortKey iKey = getSortKey(i), jKey = getSortKey(j);
+        return compareItems(i, iKey, j, jKey, iKey.order, jKey.order, onlyTreeSort);
     }
 
     int compareItems(@NotNull ItemStack i, @NotNull ItemStack j, int orderI, int orderJ) {
@@ -430,134 +456,139 @@ public class InvTweaks extends InvTweaksObfuscation {
         } else if(j.isEmpty()) {
             if(debugTree) { mostRecentComparison = "J is Empty."; }
             return -1;
-        } else if(i.isEmpty() || orderI == -1) {
+        } else if(i.isEmpty()) {
             if(debugTree) { mostRecentComparison = "I is Empty or orderI was -1."; }
             return 1;
         } else {
-            if(debugTree) { mostRecentComparison = ""; }
-            if(api) {
-                if(debugTree) { mostRecentComparison = "API Active, "; }
-                int lastOrder = cfgManager.getConfig().getTree().getLastTreeOrder();
-                if(orderI > lastOrder) { orderI = Integer.MAX_VALUE; }
-                if(orderJ > lastOrder) { orderJ = Integer.MAX_VALUE; }
-            }
+            return compareItems(i, getSortKey(i), j, getSortKey(j), orderI, orderJ, api);
+        }
+    }
 
-            if(debugTree) { mostRecentComparison += "I: " + orderI + ", J: " + orderJ; }
+    private int compareItems(@NotNull ItemStack i, @NotNull InvTweaksSortKey iKey, @NotNull ItemStack j, @NotNull InvTweaksSortKey jKey, int orderI, int orderJ, boolean api) {
+        if(orderI == -1) {
+            if(debugTree) { mostRecentComparison = "I is Empty or orderI was -1."; }
+            return 1;
+        }
 
-            //If items are in different order slots, they are inherently comparator contract friendly.
-            if(orderI != orderJ) {
-                if(debugTree) { mostRecentComparison += ", Normal: " + (orderI - orderJ); }
-                return orderI - orderJ;
-            }
+        if(debugTree) { mostRecentComparison = ""; }
+        if(api) {
+            if(debugTree) { mostRecentComparison = "API Active, "; }
+            int lastOrder = cfgManager.getConfig().getTree().getLastTreeOrder();
+            if(orderI > lastOrder) { orderI = Integer.MAX_VALUE; }
+            if(orderJ > lastOrder) { orderJ = Integer.MAX_VALUE; }
+        }
 
-            //All items in the same sort slot need to be treated the same for the comparator contract.
+        if(debugTree) { mostRecentComparison += "I: " + orderI + ", J: " + orderJ; }
 
-            //Allow external sorting systems to take control of unsorted items not handled by the tree.
-            if(orderI == Integer.MAX_VALUE && orderJ == Integer.MAX_VALUE && api == true) {
-                if(debugTree) { mostRecentComparison += ", API Bailout."; }
-                return 0;
-            }
+        //If items are in different order slots, they are inherently comparator contract friendly.
+        if(orderI != orderJ) {
+            if(debugTree) { mostRecentComparison += ", Normal: " + (orderI - orderJ); }
+            return orderI - orderJ;
+        }
 
-            Item iItem = i.getItem(), jItem = j.getItem();
-            //Sort By Tool type then Harvest Level, (Better first.)
-            int cTool = compareTools(i, j, iItem, jItem);
-            if(debugTree) { mostRecentComparison += ", Tool: " + cTool; }
-            if(cTool != 0) { return cTool; }
-
-            //Sort by main-hand damage capability:  (Higher first, faster first for same damage)
-            //Most tools also do damage, so they were tested as tools first.
-            //If a tool reaches here, it has the same max durabilty, harvest level, and tool class.
-            int cSword = compareSword(i, j, iItem, jItem);
-            if(debugTree) { mostRecentComparison += ", Sword: " + cSword; }
-            if(cSword != 0) { return cSword; }
-
-            //Sort By Armor utility:  (More First)
-            int cArmor = compareArmor(i, j, iItem, jItem);
-            if(debugTree) { mostRecentComparison += ", Armor: " + cArmor; }
-            if(cArmor != 0) { return cArmor; }
-
-            //Sort my display name:
-            int cName = compareNames(i, j);
-            if(debugTree) { mostRecentComparison += ", Name" + cName; }
-            if(cName != 0) { return cName; }
-
-            //Sort By enchantments:
-            int cEnchant = compareEnchantment(i, j);
-            if(cEnchant != 0) { return cEnchant; }
-
-            //Use durability to sort, favoring more durable items.  (Non-Tools, Non-Armor, Non-Weapons.)
-            int maxDamage = compareMaxDamage(i, j);
-            if(debugTree) { mostRecentComparison += ", Max Damage: " + maxDamage; }
-            if(maxDamage != 0) { return maxDamage; }
-
-            //Use remaining durability to sort, favoring config option on damaged.
-            int curDamage = compareCurDamage(i, j);
-            if(debugTree) { mostRecentComparison += ", Current Damage: " + curDamage; }
-            if(curDamage != 0) { return curDamage; }
-
-            //Use stack size to put bigger stacks first.
-            if(j.getCount() != i.getCount()) {
-                if(debugTree) { mostRecentComparison += ", Stack Size"; }
-                return j.getCount() - i.getCount();
-            }
+        //All items in the same sort slot need to be treated the same for the comparator contract.
 
-            //Final catch all:
-            if(debugTree) {
-                mostRecentComparison += ", Final: " + ObjectUtils.compare(i.getItem().getRegistryName().toString(), j.getItem().getRegistryName().toString());
-            }
-            // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-            return ObjectUtils.compare(i.getItem().getRegistryName().toString(), j.getItem().getRegistryName().toString());
+        //Allow external sorting systems to take control of unsorted items not handled by the tree.
+        if(orderI == Integer.MAX_VALUE && orderJ == Integer.MAX_VALUE && api == true) {
+            if(debugTree) { mostRecentComparison += ", API Bailout."; }
+            return 0;
+        }
+
+        //Sort By Tool type then Harvest Level, (Better first.)
+        int cTool = compareTools(iKey, jKey);
+        if(debugTree) { mostRecentComparison += ", Tool: " + cTool; }
+        if(cTool != 0) { return cTool; }
+
+        //Sort by main-hand damage capability:  (Higher first, faster first for same damage)
+        //Most tools also do damage, so they were tested as tools first.
+        //If a tool reaches here, it has the same max durabilty, harvest level, and tool class.
+        int cSword = compareSword(iKey, jKey);
+        if(debugTree) { mostRecentComparison += ", Sword: " + cSword; }
+        if(cSword != 0) { return cSword; }
+
+        //Sort By Armor utility:  (More First)
+        int cArmor = compareArmor(iKey, jKey);
+        if(debugTree) { mostRecentComparison += ", Armor: " + cArmor; }
+        if(cArmor != 0) { return cArmor; }
+
+        //Sort my display name:
+        int cName = compareNames(iKey, jKey);
+        if(debugTree) { mostRecentComparison += ", Name" + cName; }
+        if(cName != 0) { return cName; }
+
+        //Sort By enchantments:
+        int cEnchant = compareEnchantment(iKey, jKey);
+        if(cEnchant != 0) { return cEnchant; }
+
+        //Use durability to sort, favoring more durable items.  (Non-Tools, Non-Armor, Non-Weapons.)
+        int maxDamage = compareMaxDamage(iKey, jKey);
+        if(debugTree) { mostRecentComparison += ", Max Damage: " + maxDamage; }
+        if(maxDamage != 0) { return maxDamage; }
+
+        //Use remaining durability to sort, favoring config option on damaged.
+        int curDamage = compareCurDamage(iKey, jKey);
+        if(debugTree) { mostRecentComparison += ", Current Damage: " + curDamage; }
+        if(curDamage != 0) { return curDamage; }
+
+        //Use stack size to put bigger stacks first.
+        if(j.getCount() != i.getCount()) {
+            if(debugTree) { mostRecentComparison += ", Stack Size"; }
+            return j.getCount() - i.getCount();
+        }
 
+        //Final catch all:
+        if(debugTree) {
+            mostRecentComparison += ", Final: " + ObjectUtils.compare(iKey.registryName, jKey.registryName);
         }
+        return ObjectUtils.compare(iKey.registryName, jKey.registryName);
     }
 
-    private int compareNames(ItemStack i, ItemStack j) {
-        boolean iHasName = i.hasDisplayName();
-        boolean jHasName = j.hasDisplayName();
-        @NotNull String iDisplayName = i.getDisplayName();
-        @NotNull String jDisplayName = j.getDisplayName();
+    /**
+     * @return The cached sort key of the given stack. The cache is dropped whenever a new item tree is loaded.
+     */
+    @NotNull
+    private InvTweaksSortKey getSortKey(@NotNull ItemStack stack) {
+        IItemTree tree = cfgManager.getConfig().getTree();
+        if(tree != sortKeyTree) {
+            sortKeys.clear();
+            sortKeyTree = tree;
+        }
+        return sortKeys.get(stack, this::getItemOrder);
+    }
 
+    private int compareNames(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
         //Custom named items come first.
-        if(iHasName || jHasName) {
-            if(!iHasName) {
+        if(i.hasDisplayName || j.hasDisplayName) {
+            if(!i.hasDisplayName) {
                 if(debugTree) { mostRecentComparison += ", J has custom Name"; }
                 return -1;
-            } else if(!jHasName) {
+            } else if(!j.hasDisplayName) {
                 if(debugTree) { mostRecentComparison += ", I has custom Name"; }
                 return 1;
             }
         }
         //Differently named items (either both custom or both default, like bees or resource chickens.)
-        if(!iDisplayName.equals(jDisplayName)) {
-            if(debugTree) { mostRecentComparison += ", Name: " + iDisplayName.compareTo(jDisplayName); }
-            return iDisplayName.compareTo(jDisplayName);
+        if(!i.displayName.equals(j.displayName)) {
+            if(debugTree) { mostRecentComparison += ", Name: " + i.displayName.compareTo(j.displayName); }
+            return i.displayName.compareTo(j.displayName);
         }
 
         return 0;
     }
 
-    private int compareTools(ItemStack i, ItemStack j, Item iItem, Item jItem) {
-        String toolClass1 = getToolClass(i, iItem);
-        String toolClass2 = getToolClass(j, jItem);
-
-        if(debugTree) { mostRecentComparison += ", ToolClass (" + toolClass1 + ", " + toolClass2 + ")"; }
-        boolean isTool1 = toolClass1 != "";
-        boolean isTool2 = toolClass2 != "";
-        if(!isTool1 || !isTool2) {
-            //This should catch any instances where one of the stacks is null.
-            return Boolean.compare(isTool2, isTool1);
+    private int compareTools(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
+        if(debugTree) { mostRecentComparison += ", ToolClass (" + i.toolClass + ", " + j.toolClass + ")"; }
+        if(!i.isTool || !j.isTool) {
+            return Boolean.compare(j.isTool, i.isTool);
         } else {
-            int toolClassComparison = toolClass1.compareTo(toolClass2);
+            int toolClassComparison = i.toolClass.compareTo(j.toolClass);
             if(toolClassComparison != 0) {
                 return toolClassComparison;
             }
             // If they were the same type, sort with the better harvest level first.
-            int harvestLevel1 = iItem.getHarvestLevel(i, toolClass1, null, null);
-            int harvestLevel2 = jItem.getHarvestLevel(j, toolClass2, null, null);
-            int toolLevelComparison = harvestLevel2 - harvestLevel1;
-            if(debugTree) { mostRecentComparison += ", HarvestLevel (" + harvestLevel1 + ", " + harvestLevel2 + ")"; }
-            if(toolLevelComparison != 0) {
-                return Integer.compare(harvestLevel2, harvestLevel1);
+            if(debugTree) { mostRecentComparison += ", HarvestLevel (" + i.harvestLevel + ", " + j.harvestLevel + ")"; }
+            if(i.harvestLevel != j.harvestLevel) {
+                return Integer.compare(j.harvestLevel, i.harvestLevel);
             }
         }
 
@@ -565,110 +596,58 @@ public class InvTweaks extends InvTweaksObfuscation {
 
     }
 
-    private int compareSword(ItemStack itemStack1, ItemStack itemStack2, Item iItem, Item jItem) {
-        Multimap<String, AttributeModifier> multimap1 = itemStack1 != null ? itemStack1.getAttributeModifiers(EntityEquipmentSlot.MAINHAND) : null;
-        Multimap<String, AttributeModifier> multimap2 = itemStack2 != null ? itemStack2.getAttributeModifiers(EntityEquipmentSlot.MAINHAND) : null;
-
-        final String attackDamageName = SharedMonsterAttributes.ATTACK_DAMAGE.getName();
-        final String attackSpeedName = SharedMonsterAttributes.ATTACK_SPEED.getName();
+    private int compareSword(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
+        if(debugTree) { mostRecentComparison += ", HasDamage (" + i.hasAttackDamage + ", " + j.hasAttackDamage + ")"; }
 
-        boolean hasDamage1 = itemStack1 != null ? multimap1.containsKey(attackDamageName) : false;
-        boolean hasDamage2 = itemStack2 != null ? multimap2.containsKey(attackDamageName) : false;
-        boolean hasSpeed1 = itemStack1 != null ? multimap1.containsKey(attackSpeedName) : false;
-        boolean hasSpeed2 = itemStack2 != null ? multimap2.containsKey(attackSpeedName) : false;
-
-        if(debugTree) { mostRecentComparison += ", HasDamage (" + hasDamage1 + ", " + hasDamage2 + ")"; }
-
-        if(!hasDamage1 || !hasDamage2) {
-            return Boolean.compare(hasDamage2, hasDamage1);
+        if(!i.hasAttackDamage || !j.hasAttackDamage) {
+            return Boolean.compare(j.hasAttackDamage, i.hasAttackDamage);
         } else {
-            Collection<AttributeModifier> damageMap1 = multimap1.get(attackDamageName);
-            Collection<AttributeModifier> damageMap2 = multimap2.get(attackDamageName);
-            Double attackDamage1 = ((AttributeModifier) damageMap1.toArray()[0]).getAmount();
-            Double attackDamage2 = ((AttributeModifier) damageMap2.toArray()[0]).getAmount();
-            // This funny comparison is because Double == Double never seems to work.
-            int damageComparison = Double.compare(attackDamage2, attackDamage1);
-            if(damageComparison == 0 && hasSpeed1 && hasSpeed2) {
+            int damageComparison = Double.compare(j.attackDamage, i.attackDamage);
+            if(damageComparison == 0 && i.hasAttackSpeed && j.hasAttackSpeed) {
                 // Same damage, sort faster weapon first.
-                Collection<AttributeModifier> speedMap1 = multimap1.get(attackSpeedName);
-                Collection<AttributeModifier> speedMap2 = multimap2.get(attackSpeedName);
-                Double speed1 = ((AttributeModifier) speedMap1.toArray()[0]).getAmount();
-                Double speed2 = ((AttributeModifier) speedMap2.toArray()[0]).getAmount();
-                int speedComparison = Double.compare(speed2, speed1);
+                int speedComparison = Double.compare(j.attackSpeed, i.attackSpeed);
                 if(speedComparison != 0) { return speedComparison; }
 
             } else if(damageComparison != 0) {
                 // Higher damage first.
                 return damageComparison;
             }
-            return compareMaxDamage(itemStack1, itemStack2);
+            return compareMaxDamage(i, j);
         }
     }
 
-    private int compareArmor(ItemStack i, ItemStack j, Item iItem, Item jItem) {
-        int isArmor1 = (iItem instanceof ItemArmor) ? 1 : 0;
-        int isArmor2 = (jItem instanceof ItemArmor) ? 1 : 0;
-        if(isArmor1 == 0 || isArmor2 == 0) {
-            //This should catch any instances where one of the stacks is null.
-            return isArmor2 - isArmor1;
+    private int compareArmor(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
+        if(!i.isArmor || !j.isArmor) {
+            return Boolean.compare(j.isArmor, i.isArmor);
         } else {
-            ItemArmor a1 = (ItemArmor) iItem;
-            ItemArmor a2 = (ItemArmor) jItem;
-            if(a1.armorType != a2.armorType) {
-                return a2.armorType.compareTo(a1.armorType);
-            } else if(a1.damageReduceAmount != a2.damageReduceAmount) {
-                return a2.damageReduceAmount - a1.damageReduceAmount;
-            } else if(a1.toughness != a2.toughness) {
-                return a2.toughness > a1.toughness ? -1 : 1;
+            if(i.armorType != j.armorType) {
+                return j.armorType - i.armorType;
+            } else if(i.damageReduceAmount != j.damageReduceAmount) {
+                return j.damageReduceAmount - i.damageReduceAmount;
+            } else if(i.toughness != j.toughness) {
+                return j.toughness > i.toughness ? -1 : 1;
             }
             return compareMaxDamage(i, j);
         }
     }
 
-    private int compareEnchantment(ItemStack i, ItemStack j) {
-        @NotNull Map<Enchantment, Integer> iEnchs = EnchantmentHelper.getEnchantments(i);
-        @NotNull Map<Enchantment, Integer> jEnchs = EnchantmentHelper.getEnchantments(j);
-
+    private int compareEnchantment(@NotNull InvTweaksSortKey i, @NotNull InvTweaksSortKey j) {
         //Pick the item with the most enchantments first.
-        if(iEnchs.size() != jEnchs.size()) {
+        if(i.enchantmentCount != j.enchantmentCount) {
             if(debugTree) { mostRecentComparison += ", Enchantment Count"; }
-            return jEnchs.size() - iEnchs.size();
-        }
-
-        int iEnchMaxId = 0, iEnchMaxLvl = 0;
-        int jEnchMaxId = 0, jEnchMaxLvl = 0;
-
-        // TODO: This is really arbitrary but there's not really a good way to do this generically.
-        for(@NotNull Map.Entry<Enchantment, Integer> ench : iEnchs.entrySet()) {
-            int enchId = Enchantment.getEnchantmentID(ench.getKey());
-            if(ench.getValue() > iEnchMaxLvl) {
-                iEnchMaxId = enchId;
-                iEnchMaxLvl = ench.getValue();
-            } else if(ench.getValue() == iEnchMaxLvl && enchId > iEnchMaxId) {
-                iEnchMaxId = enchId;
-            }
-        }
-
-        for(@NotNull Map.Entry<Enchantment, Integer> ench : jEnchs.entrySet()) {
-            int enchId = Enchantment.getEnchantmentID(ench.getKey());
-            if(ench.getValue() > jEnchMaxLvl) {
-                jEnchMaxId = enchId;
-                jEnchMaxLvl = ench.getValue();
-            } else if(ench.getValue() == jEnchMaxLvl && enchId > jEnchMaxId) {
-                jEnchMaxId = enchId;
-            }
+            return j.enchantmentCount - i.enchantmentCount;
         }
 
         //The highest enchantment ID, (random actual enchantment.)
-        if(iEnchMaxId != jEnchMaxId) {
+        if(i.enchantmentMaxId != j.enchantmentMaxId) {
             if(debugTree) { mostRecentComparison += ", Highest Enchantment"; }
-            return jEnchMaxId - iEnchMaxId;
+            return j.enchantmentMaxId - i.enchantmentMaxId;
         }
 
         //Highest level if they both have the same coolest enchantment.
-        if(iEnchMaxLvl != jEnchMaxLvl) {
+        if(i.enchantmentMaxLevel != j.enchantmentMaxLevel) {
             if(debugTree) { mostRecentComparison += ", Highest Enchantment Level"; }
-            return jEnchMaxLvl - iEnchMaxLvl;
+            return j.enchantmentMaxLevel - i.enchantmentMaxLevel;
         }
 
         //Enchantments aren't different.
@@ -940,7 +919,7 @@ public class InvTweaks extends InvTweaksObfuscation {
     }
 
     private void handleMiddleClick(GuiScreen guiScreen) {
-        if(Mouse.isButtonDown(2)) {
+        if(input.isButtonDown(2)) {
 
             if(!cfgManager.makeSureConfigurationIsLoaded()) {
                 return;
@@ -1156,7 +1135,7 @@ public class InvTweaks extends InvTweaksObfuscation {
         }
 
         // Configurable shortcuts
-        if(Mouse.isButtonDown(0) || Mouse.isButtonDown(1)) {
+        if(input.isButtonDown(0) || input.isButtonDown(1)) {
             if(!mouseWasDown) {
                 mouseWasDown = true;
 
@@ -1174,7 +1153,7 @@ public class InvTweaks extends InvTweaksObfuscation {
 
     private int getItemOrder(@NotNull ItemStack itemStack) {
         // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-        List<IItemTreeItem> items = cfgManager.getConfig().getTree().getItems(itemStack.getItem().getRegistryName().toString(), itemStack.getItemDamage(), itemStack.getTagCompound());
+        List<IItemTreeItem> items = cfgManager.getConfig().getTree().getMatchingItems(itemStack.getItem().getRegistryName().toString(), itemStack.getItemDamage(), itemStack.getTagCompound());
         return (items.size() > 0) ? items.get(0).getOrder() : Integer.MAX_VALUE;
     }
 
@@ -1182,9 +1161,9 @@ public class InvTweaks extends InvTweaksObfuscation {
         if(sortKeyEnabled && !textboxMode) {
             int keyCode = cfgManager.getConfig().getSortKeyCode();
             if(keyCode > 0) {
-                return Keyboard.isKeyDown(keyCode);
+                return input.isKeyDown(keyCode);
             } else {
-                return Mouse.isButtonDown(100 + keyCode);
+                return input.isButtonDown(100 + keyCode);
             }
         } else {
             return false;
@@ -1219,6 +1198,8 @@ public class InvTweaks extends InvTweaksObfuscation {
             if(!firstTry) {
                 logInGame("invtweaks.keyboardfix.recover");
             }
+            // Keys released while the window was in the background sent no event
+            input.resync();
         }
         hadFocus = hasFocus;
     }
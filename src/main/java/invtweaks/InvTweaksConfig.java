@@ -9,6 +9,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,7 +55,9 @@ public class InvTweaksConfig {
     public static final String AUTOREFILL_NOTHING = "nothing";
     public static final String DEBUG = "debug";
     private final File rulesFile;
-    private final File treeFile;
+    private final List<File> treeFiles;
+    @Nullable
+    private final File treeCacheFile;
 
     private InvTweaksConfigProperties properties;
     private InvTweaksItemTree tree;
@@ -62,6 +65,11 @@ public class InvTweaksConfig {
     private int currentRuleset = 0;
     @Nullable
     private String currentRulesetName = null;
+    /**
+     * Items to load the tree against, when gathered ahead on the client thread.
+     */
+    @Nullable
+    private InvTweaksGameItems gameItems = null;
     private List<String> invalidKeywords;
 
     private long storedConfigLastModified;
@@ -71,8 +79,19 @@ public class InvTweaksConfig {
      * Creates a new configuration holder. The configuration is not yet loaded.
      */
     public InvTweaksConfig(File rulesFile_, File treeFile_) {
+        this(rulesFile_, Collections.singletonList(treeFile_), null);
+    }
+
+    /**
+     * Creates a new configuration holder, that keeps a snapshot of the loaded tree in the given file to load it faster
+     * next time. The configuration is not yet loaded.
+     *
+     * @param treeFiles_ The base tree, followed by partial trees to merge into it
+     */
+    public InvTweaksConfig(File rulesFile_, List<File> treeFiles_, @Nullable File treeCacheFile_) {
         rulesFile = rulesFile_;
-        treeFile = treeFile_;
+        treeFiles = treeFiles_;
+        treeCacheFile = treeCacheFile_;
 
         reset();
     }
@@ -107,11 +126,39 @@ public class InvTweaksConfig {
             loadProperties();
             saveProperties(); // Needed to append non-saved properties to the file
 
+            loadTreeAndRules();
+        }
+
+    }
+
+    /**
+     * Loads the item tree and the rules, without touching the properties file.
+     */
+    void loadTreeAndRules() throws Exception {
+
+        synchronized(this) {
+
             if(tree != null) {
                 MinecraftForge.EVENT_BUS.unregister(tree);
             }
             // Load tree
-            tree = InvTweaksItemTreeLoader.load(treeFile);
+            tree = InvTweaksItemTreeLoader.load(treeFiles, treeCacheFile, (gameItems != null) ? gameItems : InvTweaksGameItems.gather());
+            gameItems = null;
+
+            loadRules();
+        }
+
+    }
+
+    /**
+     * Loads the rules again, keeping the current item tree.
+     */
+    public void loadRules() throws Exception {
+
+        synchronized(this) {
+
+            rulesets = new ArrayList<>();
+            invalidKeywords = new ArrayList<>();
 
             // Read file
             @NotNull char[] bytes = new char[(int) rulesFile.length()];
@@ -265,6 +312,38 @@ public class InvTweaksConfig {
         return currentRulesetName;
     }
 
+    /**
+     * Sets the ruleset to select once the rules are loaded, if it still exists.
+     */
+    void setCurrentRulesetName(@Nullable String rulesetName) {
+        currentRulesetName = rulesetName;
+    }
+
+    /**
+     * Sets the items to load the tree against, so that load() doesn't have to read them from the game.
+     */
+    void setGameItems(@Nullable InvTweaksGameItems gameItems_) {
+        gameItems = gameItems_;
+    }
+
+    /**
+     * Puts the tree in use once this configuration is, see InvTweaksItemTreeLoader.treeActivated().
+     */
+    void registerTree() {
+        if(tree != null) {
+            InvTweaksItemTreeLoader.treeActivated(tree);
+        }
+    }
+
+    /**
+     * Stops the tree from listening to ore dictionary registrations, once this configuration is no longer in use.
+     */
+    void unregisterTree() {
+        if(tree != null) {
+            MinecraftForge.EVENT_BUS.unregister(tree);
+        }
+    }
+
     /**
      * @param i from 0 to n-1, n being the number of available configurations.
      * @return null if the given ID is invalid or the config is already enabled
@@ -319,7 +398,7 @@ public class InvTweaksConfig {
 
     public boolean isAutoRefillEnabled(String itemID, int itemDamage) {
         if(!getProperty(PROP_ENABLE_AUTO_REFILL).equals(VALUE_FALSE)) {
-            List<IItemTreeItem> items = tree.getItems(itemID, itemDamage);
+            List<IItemTreeItem> items = tree.getMatchingItems(itemID, itemDamage, null);
             List<String> autoReplaceRules = rulesets.get(currentRuleset).getAutoReplaceRules();
             boolean found = false;
             for(@NotNull String keyword : autoReplaceRules) {
@@ -354,8 +433,7 @@ public class InvTweaksConfig {
         properties.put(PROP_ENABLE_AUTO_EQUIP_ARMOR, VALUE_FALSE);
         properties.put(PROP_ENABLE_SERVER_ITEMSWAP, VALUE_TRUE);
         properties.put(PROP_ENABLE_CONFIG_LOADED_MESSAGE, VALUE_FALSE);
-        // TODO: Reenable when it doesn't just break everything
-        //properties.put(PROP_ENABLE_CONTAINER_MIRRORING, VALUE_FALSE);
+        properties.put(PROP_ENABLE_CONTAINER_MIRRORING, VALUE_FALSE);
         properties.put(PROP_INVERT_TOOL_DAMAGE, VALUE_TRUE);
 
         properties.put(PROP_SHORTCUT_ALL_ITEMS, "LCONTROL+LSHIFT, RCONTROL+RSHIFT");
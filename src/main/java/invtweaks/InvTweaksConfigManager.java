@@ -14,6 +14,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Handles the (re)loading of the configuration, and all that is related to file extraction/moves.
@@ -24,6 +28,11 @@ import java.util.List;
 public class InvTweaksConfigManager {
 
     private static final Logger log = InvTweaks.log;
+    private static final ExecutorService CONFIG_LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        @NotNull Thread thread = new Thread(runnable, "InvTweaks config loader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final Minecraft mc;
 
@@ -33,6 +42,18 @@ public class InvTweaksConfigManager {
     @Nullable
     private InvTweaksConfig config = null;
     private long storedConfigLastModified = 0;
+    /**
+     * Reports changes to the configuration files, null until the configuration folders exist or if they can't be
+     * watched (then their modification dates are checked on every call).
+     */
+    @Nullable
+    private InvTweaksConfigWatcher watcher = null;
+    /**
+     * Configuration being loaded on the loader thread, swapped in once complete. Only used from the client thread,
+     * the future publishes the loaded configuration safely.
+     */
+    @Nullable
+    private CompletableFuture<InvTweaksConfig> pendingConfig = null;
 
     @Nullable
     private InvTweaksHandlerAutoRefill autoRefillHandler = null;
@@ -43,15 +64,25 @@ public class InvTweaksConfigManager {
         mc = mc_;
     }
 
+    /**
+     * Holds an already loaded configuration, without a game to reload it from. Used by benchmarks.
+     */
+    InvTweaksConfigManager(@NotNull InvTweaksConfig config_) {
+        mc = null;
+        config = config_;
+    }
+
     private static long computeConfigLastModified() {
         long sum = Long.MIN_VALUE;
-        if(InvTweaksConst.INVTWEAKS_TREES_DIR.exists()) {
-            File[] treeFiles = InvTweaksConst.INVTWEAKS_TREES_DIR.listFiles();
-
-            for(File tree : treeFiles) {
-                //Make sure it is the type of file we want.
-                if(tree.getName().endsWith(".tree")) {
-                    sum += tree.lastModified();
+        // Partial trees are read from both folders
+        for(@NotNull File dir : new File[]{InvTweaksConst.INVTWEAKS_CONFIG_DIR, InvTweaksConst.INVTWEAKS_TREES_DIR}) {
+            File[] treeFiles = dir.listFiles();
+            if(treeFiles != null) {
+                for(File tree : treeFiles) {
+                    //Make sure it is the type of file we want.
+                    if(tree.getName().endsWith(".tree")) {
+                        sum += tree.lastModified();
+                    }
                 }
             }
         }
@@ -79,10 +110,54 @@ public class InvTweaksConfigManager {
         }
     }
 
-    // TODO Only reload modified file(s)
     public boolean makeSureConfigurationIsLoaded() {
 
+        // Keep using the current configuration until the new one is loaded
+        if(pendingConfig != null) {
+            if(!pendingConfig.isDone()) {
+                return true;
+            }
+            return swapPendingConfig();
+        }
+
+        if(watcher != null && watcher.isStopped() && !watcher.isDirty()) {
+            // The config folder went away: poll until a reload watches it again
+            watcher = null;
+        }
+
+        if(config != null && watcher != null) {
+            if(!watcher.isDirty()) {
+                return true;
+            }
+
+            // Only reload what changed
+            int changes = watcher.takeChanges();
+            if((changes & InvTweaksConfigWatcher.PROPERTIES) != 0) {
+                refreshProperties();
+            }
+            if((changes & InvTweaksConfigWatcher.TREE) != 0) {
+                return reloadConfig();
+            } else if((changes & InvTweaksConfigWatcher.RULES) != 0) {
+                return loadRules();
+            }
+            return true;
+        }
+
         // Load properties
+        refreshProperties();
+
+        // Load rules + tree files
+        long configLastModified = computeConfigLastModified();
+        if(config != null) {
+            // Check time of last edit for both configuration files.
+            return storedConfigLastModified == configLastModified || reloadConfig();
+        } else {
+            storedConfigLastModified = configLastModified;
+            return loadConfig();
+        }
+    }
+
+    private void refreshProperties() {
         try {
             if(config != null && config.refreshProperties()) {
                 shortcutsHandler = new InvTweaksHandlerShortcuts(mc, config);
@@ -94,14 +169,22 @@ public class InvTweaksConfigManager {
         } catch(IOException e) {
             InvTweaks.logInGameErrorStatic("invtweaks.loadconfig.refresh.error", e);
         }
+    }
 
-        // Load rules + tree files
-        long configLastModified = computeConfigLastModified();
-        if(config != null) {
-            // Check time of last edit for both configuration files.
-            return storedConfigLastModified == configLastModified || loadConfig();
-        } else {
-            storedConfigLastModified = configLastModified;
+    /**
+     * Reloads the rules file alone, or the whole configuration if that fails.
+     */
+    private boolean loadRules() {
+        try {
+            config.loadRules();
+
+            if(config.getProperty(InvTweaksConfig.PROP_ENABLE_CONFIG_LOADED_MESSAGE).equals(InvTweaksConfig.VALUE_TRUE)) {
+                InvTweaks.logInGameStatic("invtweaks.loadconfig.done");
+            }
+            showConfigErrors(config);
+            return true;
+        } catch(Exception e) {
+            log.error("Error while loading rules: " + e.getMessage());
             return loadConfig();
         }
     }
@@ -127,6 +210,98 @@ public class InvTweaksConfigManager {
      */
     private boolean loadConfig() {
 
+        prepareConfigFiles();
+
+        storedConfigLastModified = computeConfigLastModified();
+        if(watcher != null) {
+            // Forget about the files written above
+            watcher.takeChanges();
+        }
+
+        // Load
+
+        @Nullable String error = null;
+        @Nullable Exception errorException = null;
+
+        try {
+
+            @NotNull InvTweaksConfig newConfig = createConfig((config != null) ? config.getCurrentRulesetName() : null);
+            newConfig.load();
+            setConfig(newConfig);
+
+        } catch(FileNotFoundException e) {
+            error = "Config file not found";
+            errorException = e;
+        } catch(Exception e) {
+            error = "Error while loading config";
+            errorException = e;
+        }
+
+        if(error != null) {
+            return recoverConfig(error, errorException);
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Starts loading the configuration again on the loader thread. Meanwhile, the current configuration stays in use,
+     * and is replaced by makeSureConfigurationIsLoaded() once the new one is complete. The loader thread only parses
+     * files and builds the tree: the items it is built against are gathered here, and the tree is put in use by
+     * setConfig(), both on the client thread.
+     */
+    private boolean reloadConfig() {
+        if(config == null) {
+            return loadConfig();
+        }
+
+        prepareConfigFiles();
+        @Nullable String rulesetName = config.getCurrentRulesetName();
+
+        storedConfigLastModified = computeConfigLastModified();
+        if(watcher != null) {
+            // Forget about the files written above
+            watcher.takeChanges();
+        }
+
+        @NotNull InvTweaksConfig newConfig = createConfig(rulesetName);
+        newConfig.setGameItems(InvTweaksGameItems.gather());
+        pendingConfig = CompletableFuture.supplyAsync(() -> {
+            try {
+                newConfig.load();
+            } catch(Exception e) {
+                throw new CompletionException(e);
+            }
+            return newConfig;
+        }, CONFIG_LOADER);
+        return true;
+    }
+
+    /**
+     * Swaps in the configuration loaded by reloadConfig() if it is complete.
+     *
+     * @return false if the loading failed and the default configuration had to be restored.
+     */
+    private boolean swapPendingConfig() {
+        @NotNull CompletableFuture<InvTweaksConfig> loading = pendingConfig;
+        pendingConfig = null;
+
+        try {
+            setConfig(loading.join());
+            return true;
+        } catch(CompletionException e) {
+            return recoverConfig("Error while loading config", (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+        } catch(Exception e) {
+            return recoverConfig("Error while loading config", e);
+        }
+    }
+
+    /**
+     * Creates the folders and files the configuration is loaded from, and upgrades older ones. Runs on the client
+     * thread, as files are extracted from the game resources.
+     */
+    private void prepareConfigFiles() {
+
         // Ensure the config folder exists
         @NotNull File configDir = InvTweaksConst.MINECRAFT_CONFIG_DIR;
         if(!configDir.exists()) {
@@ -144,6 +319,10 @@ public class InvTweaksConfigManager {
             }
         }
 
+        if(watcher == null || watcher.isStopped()) {
+            watcher = InvTweaksConfigWatcher.start();
+        }
+
         // Compatibility: Tree version check
         try {
             if(!(InvTweaksItemTreeLoader.isValidVersion(InvTweaksConst.CONFIG_TREE_FILE))) {
@@ -174,92 +353,89 @@ public class InvTweaksConfigManager {
         if(!InvTweaksConst.CONFIG_TREE_FILE.exists() && extractFile(InvTweaksConst.DEFAULT_CONFIG_TREE_FILE, InvTweaksConst.CONFIG_TREE_FILE)) {
             InvTweaks.logInGameStatic(InvTweaksConst.CONFIG_TREE_FILE + " " + I18n.format("invtweaks.loadconfig.filemissing"));
         }
+    }
 
-        boolean treeBuilt = false;
-        if(InvTweaksConst.INVTWEAKS_TREES_DIR.exists()) {
-            treeBuilt = InvTweaksItemTreeBuilder.buildNewTree();
-        }
+    /**
+     * Creates a configuration to load, merging the tree files of the trees folder if there are any.
+     *
+     * @param rulesetName The ruleset to select again once the rules are loaded
+     */
+    @NotNull
+    private static InvTweaksConfig createConfig(@Nullable String rulesetName) {
+        @NotNull InvTweaksConfig newConfig = new InvTweaksConfig(InvTweaksConst.CONFIG_RULES_FILE, InvTweaksItemTreeBuilder.getTreeFiles(), InvTweaksConst.CONFIG_TREE_CACHE_FILE);
+        newConfig.setCurrentRulesetName(rulesetName);
+        return newConfig;
+    }
 
-        storedConfigLastModified = computeConfigLastModified();
+    /**
+     * Puts a loaded configuration in use, along with handlers using it.
+     */
+    private void setConfig(@NotNull InvTweaksConfig newConfig) {
+        @Nullable InvTweaksConfig oldConfig = config;
 
-        // Load
+        config = newConfig;
+        autoRefillHandler = new InvTweaksHandlerAutoRefill(mc, config);
+        shortcutsHandler = new InvTweaksHandlerShortcuts(mc, config);
+        shortcutsHandler.loadShortcuts();
 
-        @Nullable String error = null;
-        @Nullable Exception errorException = null;
+        if(oldConfig != null && oldConfig != newConfig) {
+            oldConfig.unregisterTree();
+        }
+        config.registerTree();
 
-        try {
+        if(config.getProperty(InvTweaksConfig.PROP_ENABLE_CONFIG_LOADED_MESSAGE).equals(InvTweaksConfig.VALUE_TRUE)) {
+            InvTweaks.logInGameStatic("invtweaks.loadconfig.done");
+        }
+        showConfigErrors(config);
+        ItemListSorter.ReloadItemList();
+    }
 
-            // Configuration creation
-            if(config == null) {
-                if(treeBuilt & InvTweaksConst.MERGED_TREE_FILE.exists()) {
-                    config = new InvTweaksConfig(InvTweaksConst.CONFIG_RULES_FILE, InvTweaksConst.MERGED_TREE_FILE);
-                } else if(treeBuilt & InvTweaksConst.MERGED_TREE_FILE_ALT.exists()) {
-                    config = new InvTweaksConfig(InvTweaksConst.CONFIG_RULES_FILE, InvTweaksConst.MERGED_TREE_FILE_ALT);
-                } else {
-                    config = new InvTweaksConfig(InvTweaksConst.CONFIG_RULES_FILE, InvTweaksConst.CONFIG_TREE_FILE);
-                }
-                autoRefillHandler = new InvTweaksHandlerAutoRefill(mc, config);
-                shortcutsHandler = new InvTweaksHandlerShortcuts(mc, config);
+    /**
+     * Restores the default rules and tree after a failed load, backing up the user files.
+     *
+     * @return false, as the user configuration could not be loaded.
+     */
+    private boolean recoverConfig(@NotNull String error, @Nullable Exception errorException) {
+        log.error(error);
+        InvTweaks.logInGameErrorStatic(error, errorException);
+
+        try {
+            // The purpose of this is to try to deal with any errors in their config files
+            // Because things crash if config is null
+            backupFile(InvTweaksConst.CONFIG_TREE_FILE);
+            backupFile(InvTweaksConst.CONFIG_RULES_FILE);
+            backupFile(InvTweaksConst.CONFIG_PROPS_FILE);
+
+            //Intentionally not trying to use the merged file.
+            extractFile(InvTweaksConst.DEFAULT_CONFIG_FILE, InvTweaksConst.CONFIG_RULES_FILE);
+            extractFile(InvTweaksConst.DEFAULT_CONFIG_TREE_FILE, InvTweaksConst.CONFIG_TREE_FILE);
+
+            @NotNull InvTweaksConfig defaultConfig = new InvTweaksConfig(InvTweaksConst.CONFIG_RULES_FILE, InvTweaksConst.CONFIG_TREE_FILE);
+            defaultConfig.load();
+            if(config != null) {
+                config.unregisterTree();
             }
+            config = defaultConfig;
+            config.registerTree();
+            autoRefillHandler = new InvTweaksHandlerAutoRefill(mc, config);
+            shortcutsHandler = new InvTweaksHandlerShortcuts(mc, config);
 
-            // Configuration loading
-            config.load();
             shortcutsHandler.loadShortcuts();
-
-            if(config.getProperty(InvTweaksConfig.PROP_ENABLE_CONFIG_LOADED_MESSAGE).equals(InvTweaksConfig.VALUE_TRUE)) {
-                InvTweaks.logInGameStatic("invtweaks.loadconfig.done");
-            }
-            showConfigErrors(config);
             ItemListSorter.ReloadItemList();
-
-        } catch(FileNotFoundException e) {
-            error = "Config file not found";
-            errorException = e;
         } catch(Exception e) {
-            error = "Error while loading config";
-            errorException = e;
-        }
-
-        if(error != null) {
-            log.error(error);
-            InvTweaks.logInGameErrorStatic(error, errorException);
-
-            try {
-                // TODO: Refactor this so I'm not just copying the code from above.
-                // The purpose of this is to try to deal with any errors in their config files
-                // Because things crash if config is null
-                backupFile(InvTweaksConst.CONFIG_TREE_FILE);
-                backupFile(InvTweaksConst.CONFIG_RULES_FILE);
-                backupFile(InvTweaksConst.CONFIG_PROPS_FILE);
+            // But if this fails too there's not much point in trying again
+            config = null;
+            autoRefillHandler = null;
+            shortcutsHandler = null;
 
-                //Intentionally not trying to use the merged file.
-                extractFile(InvTweaksConst.DEFAULT_CONFIG_FILE, InvTweaksConst.CONFIG_RULES_FILE);
-                extractFile(InvTweaksConst.DEFAULT_CONFIG_TREE_FILE, InvTweaksConst.CONFIG_TREE_FILE);
-
-                config = new InvTweaksConfig(InvTweaksConst.CONFIG_RULES_FILE, InvTweaksConst.CONFIG_TREE_FILE);
-                autoRefillHandler = new InvTweaksHandlerAutoRefill(mc, config);
-                shortcutsHandler = new InvTweaksHandlerShortcuts(mc, config);
-
-                config.load();
-                shortcutsHandler.loadShortcuts();
-                ItemListSorter.ReloadItemList();
-            } catch(Exception e) {
-                // But if this fails too there's not much point in trying again
-                config = null;
-                autoRefillHandler = null;
-                shortcutsHandler = null;
-
-                if(e.getCause() == null) {
-                    e.initCause(errorException);
-                }
-
-                throw new Error("InvTweaks config load failed", e);
+            if(e.getCause() == null) {
+                e.initCause(errorException);
             }
 
-            return false;
-        } else {
-            return true;
+            throw new Error("InvTweaks config load failed", e);
         }
+
+        return false;
     }
 
     private boolean extractFile(@NotNull ResourceLocation resource, @NotNull File destination) {
@@ -0,0 +1,169 @@
+package invtweaks;
+
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches the configuration and trees folders from a background thread, so that checking whether the configuration
+ * needs to be reloaded costs a volatile read instead of checking the modification date of every file.
+ */
+public class InvTweaksConfigWatcher implements Runnable {
+    public static final int PROPERTIES = 1;
+    public static final int RULES = 2;
+    public static final int TREE = 4;
+
+    private static final Logger log = InvTweaks.log;
+    private static final WatchEvent.Kind<?>[] KINDS = {StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE};
+
+    @NotNull
+    private final WatchService watchService;
+    @NotNull
+    private final Path configDir;
+    @NotNull
+    private final Path treesDir;
+    /**
+     * Files changed since the last call to takeChanges(), as a combination of PROPERTIES, RULES and TREE.
+     */
+    @NotNull
+    private final AtomicInteger changes = new AtomicInteger();
+    private volatile boolean dirty = false;
+    private volatile boolean stopped = false;
+
+    private InvTweaksConfigWatcher(@NotNull WatchService watchService_, @NotNull Path configDir_, @NotNull Path treesDir_) {
+        watchService = watchService_;
+        configDir = configDir_;
+        treesDir = treesDir_;
+    }
+
+    /**
+     * Starts watching the configuration folders, which must exist.
+     *
+     * @return The watcher, or null if the file system doesn't support watching them.
+     */
+    @Nullable
+    public static InvTweaksConfigWatcher start() {
+        try {
+            @NotNull Path configDir = InvTweaksConst.INVTWEAKS_CONFIG_DIR.toPath().toAbsolutePath();
+            @NotNull Path treesDir = InvTweaksConst.INVTWEAKS_TREES_DIR.toPath().toAbsolutePath();
+            WatchService watchService = configDir.getFileSystem().newWatchService();
+
+            configDir.register(watchService, KINDS);
+            if(Files.isDirectory(treesDir)) {
+                treesDir.register(watchService, KINDS);
+            }
+
+            @NotNull InvTweaksConfigWatcher watcher = new InvTweaksConfigWatcher(watchService, configDir, treesDir);
+            @NotNull Thread thread = new Thread(watcher, "InvTweaks config watcher");
+            thread.setDaemon(true);
+            thread.start();
+            return watcher;
+        } catch(IOException | UnsupportedOperationException e) {
+            log.warn("Unable to watch configuration files, falling back to polling: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if a configuration file changed since the last call to takeChanges().
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * @return true if the watcher stopped because the config folder went away. Changes made since then are missed, a
+     * new watcher has to be started once the folder exists again.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return The files changed since the last call, as a combination of PROPERTIES, RULES and TREE.
+     */
+    public int takeChanges() {
+        dirty = false;
+        return changes.getAndSet(0);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(true) {
+                WatchKey key = watchService.take();
+                @NotNull Path dir = (Path) key.watchable();
+                for(@NotNull WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        markChanged(PROPERTIES | RULES | TREE);
+                    } else {
+                        @NotNull Path fileName = ((Path) event.context()).getFileName();
+                        markChanged(getChangedPart(dir, fileName.toString()));
+                        if(dir.equals(configDir) && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && fileName.equals(treesDir.getFileName())) {
+                            watchTreesDir();
+                        }
+                    }
+                }
+                if(!key.reset()) {
+                    // The folder was deleted, it will be created again on next load
+                    markChanged(PROPERTIES | RULES | TREE);
+                    if(dir.equals(configDir)) {
+                        break;
+                    }
+                }
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            // Stop watching
+        } finally {
+            stopped = true;
+            try {
+                watchService.close();
+            } catch(IOException e) {
+                // Already stopped
+            }
+        }
+    }
+
+    /**
+     * Watches the trees folder again once it was created anew.
+     */
+    private void watchTreesDir() {
+        try {
+            if(Files.isDirectory(treesDir)) {
+                treesDir.register(watchService, KINDS);
+                // Files may have been put in it before it was watched
+                markChanged(TREE);
+            }
+        } catch(IOException e) {
+            log.warn("Unable to watch the trees folder: " + e.getMessage());
+        }
+    }
+
+    private int getChangedPart(@NotNull Path dir, @NotNull String fileName) {
+        if(fileName.endsWith(".tree")) {
+            // Partial trees are read from both folders
+            return TREE;
+        } else if(dir.equals(treesDir)) {
+            return 0;
+        } else if(fileName.equals(InvTweaksConst.CONFIG_PROPS_FILE.getName())) {
+            return PROPERTIES;
+        } else if(fileName.equals(InvTweaksConst.CONFIG_RULES_FILE.getName())) {
+            return RULES;
+        } else if(fileName.equals(InvTweaksConst.CONFIG_TREE_FILE.getName())) {
+            return TREE;
+        } else {
+            return 0;
+        }
+    }
+
+    private void markChanged(int parts) {
+        if(parts != 0) {
+            changes.getAndUpdate(current -> current | parts);
+            dirty = true;
+        }
+    }
+}
@@ -19,10 +19,12 @@ public class InvTweaksConst {
     public static final String INVTWEAKS_CHANNEL = "InventoryTweaks";
 
     // Network Protocol version
-    public static final byte PROTOCOL_VERSION = 2;
+    public static final byte PROTOCOL_VERSION = 4;
     public static final byte PACKET_LOGIN = 0x00;
     public static final byte PACKET_CLICK = 0x01;
     public static final byte PACKET_SORTCOMPLETE = 0x02;
+    public static final byte PACKET_CLICK_BATCH = 0x03;
+    public static final byte PACKET_SORT_LAYOUT = 0x04;
 
     // Timing constants
     public static final int RULESET_SWAP_DELAY = 1000;
@@ -31,13 +33,15 @@ public class InvTweaksConst {
     public static final int TOOLTIP_DELAY = 800;
 
     // File constants
-    public static final File MINECRAFT_DIR = Minecraft.getMinecraft().gameDir;
+    // Without a game (benchmarks), fall back to the working directory
+    public static final File MINECRAFT_DIR = (Minecraft.getMinecraft() != null) ? Minecraft.getMinecraft().gameDir : new File(".");
     public static final File MINECRAFT_CONFIG_DIR = new File(MINECRAFT_DIR, "config/");
     public static final File INVTWEAKS_CONFIG_DIR = new File(MINECRAFT_CONFIG_DIR, "InvTweaks/");
     public static final File INVTWEAKS_TREES_DIR = new File(INVTWEAKS_CONFIG_DIR, "trees/");
     public static final File CONFIG_PROPS_FILE = new File(INVTWEAKS_CONFIG_DIR, "InvTweaks.cfg");
     public static final File CONFIG_RULES_FILE = new File(INVTWEAKS_CONFIG_DIR, "InvTweaksRules.txt");
     public static final File CONFIG_TREE_FILE = new File(INVTWEAKS_CONFIG_DIR, "InvTweaksTree.txt");
+    public static final File CONFIG_TREE_CACHE_FILE = new File(INVTWEAKS_CONFIG_DIR, "InvTweaksTree.cache");
     public static final File OLD_CONFIG_TREE_FILE = new File(MINECRAFT_CONFIG_DIR, "InvTweaksTree.txt");
     public static final File OLDER_CONFIG_TREE_FILE = new File(MINECRAFT_CONFIG_DIR, "InvTweaksTree.xml");
     public static final File OLDER_CONFIG_RULES_FILE = new File(MINECRAFT_DIR, "InvTweaksRules.txt");
@@ -45,6 +49,8 @@ public class InvTweaksConst {
     public static final File TEMP_DIR = new File(System.getProperty("java.io.tmpdir"));
     public static final File MERGED_TREE_FILE = new File(TEMP_DIR, "InvTweaksTree.txt");
     public static final File MERGED_TREE_FILE_ALT = new File(INVTWEAKS_TREES_DIR, "InvTweaksTree.txt");
+    // Merged trees are loaded from memory, run with -Dinvtweaks.dumpMergedTree=true to see the result
+    public static final boolean DUMP_MERGED_TREE = Boolean.getBoolean("invtweaks.dumpMergedTree");
 
     public static final String INVTWEAKS_RESOURCE_DOMAIN = "inventorytweaks";
     public static final ResourceLocation DEFAULT_CONFIG_FILE = new ResourceLocation(INVTWEAKS_RESOURCE_DOMAIN, "defaultconfig.dat");
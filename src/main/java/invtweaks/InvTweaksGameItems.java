@@ -0,0 +1,102 @@
+package invtweaks;
+
+import net.minecraft.creativetab.CreativeTabs;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+import net.minecraftforge.oredict.OreDictionary;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * The items class and ore dictionary rules of the item tree expand to. Item and mod code isn't safe to call from
+ * another thread, so this is gathered on the client thread, and the tree is then built from it on the config loader
+ * thread.
+ */
+class InvTweaksGameItems {
+    /**
+     * Every registered item, with its sub-items for those that have some, in registry order.
+     */
+    @NotNull
+    private final List<GameItem> items;
+    /**
+     * Stacks of each ore dictionary name, in registration order.
+     */
+    @NotNull
+    private final Map<String, List<ItemStack>> ores;
+
+    private InvTweaksGameItems(@NotNull List<GameItem> items_, @NotNull Map<String, List<ItemStack>> ores_) {
+        items = items_;
+        ores = ores_;
+    }
+
+    /**
+     * Reads the item registry and the ore dictionary. Must be called on the client thread.
+     */
+    @NotNull
+    static InvTweaksGameItems gather() {
+        @NotNull List<GameItem> items = new ArrayList<>();
+        for(Map.Entry<ResourceLocation, Item> entry : ForgeRegistries.ITEMS.getEntries()) {
+            Item item = entry.getValue();
+
+            if(item.getHasSubtypes()) {
+                for(CreativeTabs tab : item.getCreativeTabs()) {
+                    if(tab != null) {
+                        NonNullList<ItemStack> stacks = NonNullList.create();
+                        item.getSubItems(tab, stacks);
+                        // FIXME: Ignore identical duplicate entries from different tabs...
+                        for(@NotNull ItemStack stack : stacks) {
+                            items.add(new GameItem(stack));
+                        }
+                    }
+                }
+            } else {
+                items.add(new GameItem(item.getDefaultInstance()));
+            }
+        }
+
+        @NotNull Map<String, List<ItemStack>> ores = new LinkedHashMap<>();
+        for(String oreName : OreDictionary.getOreNames()) {
+            ores.put(oreName, new ArrayList<>(OreDictionary.getOres(oreName, false)));
+        }
+        return new InvTweaksGameItems(items, ores);
+    }
+
+    @NotNull
+    List<GameItem> getItems() {
+        return items;
+    }
+
+    @NotNull
+    Map<String, List<ItemStack>> getOres() {
+        return ores;
+    }
+
+    @NotNull
+    List<ItemStack> getOres(String oreName) {
+        return ores.getOrDefault(oreName, Collections.emptyList());
+    }
+
+    /**
+     * A stack, along with what class rules check about it, read from the item on the client thread.
+     */
+    static class GameItem {
+        @NotNull
+        final ItemStack stack;
+        @NotNull
+        final String toolClass;
+        final boolean shield;
+        final boolean damageable;
+
+        private GameItem(@NotNull ItemStack stack_) {
+            stack = stack_;
+            Item item = stack.getItem();
+            toolClass = InvTweaks.getToolClass(stack, item);
+            shield = item.isShield(stack, null);
+            damageable = item.isDamageable();
+        }
+    }
+}
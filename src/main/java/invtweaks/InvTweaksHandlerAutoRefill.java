@@ -67,7 +67,7 @@ public class InvTweaksHandlerAutoRefill extends InvTweaksObfuscation {
 
             //// Search replacement
 
-            @NotNull List<IItemTreeItem> items = tree.getItems(wantedId, wantedDamage);
+            @NotNull List<IItemTreeItem> items = tree.getMatchingItems(wantedId, wantedDamage, null);
 
             // Find rules that match the slot
             for(@NotNull IItemTreeItem item : items) {
@@ -108,7 +108,7 @@ public class InvTweaksHandlerAutoRefill extends InvTweaksObfuscation {
                     candidateStack = container.getItemStack(i);
                     if(!candidateStack.isEmpty()) {
                         // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-                        @NotNull List<IItemTreeItem> candidateItems = tree.getItems(candidateStack.getItem().getRegistryName().toString(), candidateStack.getItemDamage());
+                        @NotNull List<IItemTreeItem> candidateItems = tree.getMatchingItems(candidateStack.getItem().getRegistryName().toString(), candidateStack.getItemDamage(), null);
                         if(tree.matches(candidateItems, rule.getKeyword())) {
                             // Choose tool of highest damage value
                             if(candidateStack.getMaxStackSize() == 1) {
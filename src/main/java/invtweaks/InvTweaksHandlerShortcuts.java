@@ -23,25 +23,30 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
     private static final int DROP_SLOT = -999;
     private InvTweaksConfig config;
     private IContainerManager container;
-    /**
-     * Stores all pressed keys (only the one that are related to shortcuts)
-     */
-    private Map<Integer, Boolean> pressedKeys;
     /**
      * Stores the shortcuts mappings
      */
     private Map<InvTweaksShortcutType, List<InvTweaksShortcutMapping>> shortcuts;
+    /**
+     * Mapping triggered for each shortcut type, resolved again only when the input state changes
+     */
+    @NotNull
+    private final Map<InvTweaksShortcutType, InvTweaksShortcutMapping> triggeredShortcuts = new EnumMap<>(InvTweaksShortcutType.class);
+    private int resolvedInputVersion = -1;
+    /**
+     * Key codes of Minecraft's Up & Down controls when the mappings were loaded
+     */
+    private int upKeyCode = 0, downKeyCode = 0;
 
     public InvTweaksHandlerShortcuts(Minecraft mc_, InvTweaksConfig config_) {
         super(mc_);
         config = config_;
-        pressedKeys = new HashMap<>();
         shortcuts = new HashMap<>();
     }
 
     public void loadShortcuts() {
-        pressedKeys.clear();
         shortcuts.clear();
+        resolvedInputVersion = -1;
 
         // Register shortcut mappings
         @NotNull Map<String, String> keys = config.getProperties(InvTweaksConfig.PROP_SHORTCUT_PREFIX);
@@ -57,7 +62,8 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
         }
 
         // Add Minecraft's Up & Down mappings
-        int upKeyCode = getKeyBindingForwardKeyCode(), downKeyCode = getKeyBindingBackKeyCode();
+        upKeyCode = getKeyBindingForwardKeyCode();
+        downKeyCode = getKeyBindingBackKeyCode();
 
         registerShortcutMapping(InvTweaksShortcutType.MOVE_UP, new InvTweaksShortcutMapping(upKeyCode));
         registerShortcutMapping(InvTweaksShortcutType.MOVE_DOWN, new InvTweaksShortcutMapping(downKeyCode));
@@ -67,10 +73,6 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
         for(int i : hotbarKeys) {
             registerShortcutMapping(InvTweaksShortcutType.MOVE_TO_SPECIFIC_HOTBAR_SLOT, new InvTweaksShortcutMapping(i));
         }
-
-        // Register (L/R)SHIFT to allow to filter them
-        pressedKeys.put(Keyboard.KEY_LSHIFT, false);
-        pressedKeys.put(Keyboard.KEY_RSHIFT, false);
     }
 
     private void registerShortcutMapping(InvTweaksShortcutType type, @NotNull InvTweaksShortcutMapping mapping) {
@@ -82,10 +84,6 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
             newMappingList.add(mapping);
             shortcuts.put(type, newMappingList);
         }
-        // Register key status listeners
-        for(int keyCode : mapping.getKeyCodes()) {
-            pressedKeys.put(keyCode, false);
-        }
     }
 
     public void handleShortcut() {
@@ -97,11 +95,17 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
 
                 // GO!
                 runShortcut(shortcutToTrigger);
+                if(container.isMirrored()) {
+                    // Nothing was clicked for real yet
+                    container.applyChanges();
+                }
 
                 // Reset mouse status to prevent default action.
                 // TODO Find a better solution, like 'anticipate' default action?
                 Mouse.destroy();
                 Mouse.create();
+                // The new mouse won't report the release of the buttons held until now
+                InvTweaks.getInstance().getInputState().resync();
 
                 // Fixes a tiny glitch (Steve looks for a short moment
                 // at [0, 0] because of the mouse reset).
@@ -262,7 +266,7 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
                 }
 
                 // Shortcut modifiers
-                shortcutConfig.forceEmptySlot = Mouse.isButtonDown(1);
+                shortcutConfig.forceEmptySlot = InvTweaks.getInstance().getInputState().isButtonDown(1);
                 shortcutConfig.action = shortcut.getAction();
                 shortcutConfig.scope = shortcut.getScope();
 
@@ -278,15 +282,6 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
         if(haveControlsChanged()) {
             loadShortcuts(); // Reset mappings
         }
-        for(int keyCode : pressedKeys.keySet()) {
-            if(keyCode > 0 && Keyboard.isKeyDown(keyCode)) {
-                if(!pressedKeys.get(keyCode)) {
-                    pressedKeys.put(keyCode, true);
-                }
-            } else {
-                pressedKeys.put(keyCode, false);
-            }
-        }
     }
 
     /**
@@ -295,17 +290,17 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
      * @return true if the shortuts listeners have to be reset
      */
     private boolean haveControlsChanged() {
-        return (!pressedKeys.containsKey(getKeyBindingForwardKeyCode()) || !pressedKeys.containsKey(getKeyBindingBackKeyCode()));
+        return upKeyCode != getKeyBindingForwardKeyCode() || downKeyCode != getKeyBindingBackKeyCode();
     }
 
     private void runShortcut(@NotNull ShortcutConfig shortcut) throws TimeoutException {
         // Try to put held item down
-        if(!getHeldStack().isEmpty()) {
+        if(!container.getHeldStack().isEmpty()) {
             @Nullable Slot slot = InvTweaksObfuscation.getSlotAtMousePosition((GuiContainer) getCurrentScreen());
             if(slot != null) {
                 int slotNumber = getSlotNumber(slot);
                 container.putHoldItemDown(container.getSlotSection(slotNumber), container.getSlotIndex(slotNumber));
-                if(!getHeldStack().isEmpty()) {
+                if(!container.getHeldStack().isEmpty()) {
                     return;
                 }
             } else {
@@ -341,13 +336,12 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
 
                         switch(shortcut.scope) {
                             case ONE_STACK: {
-                                @Nullable Slot slot = container.getSlot(shortcut.fromSection, shortcut.fromIndex);
-                                if(slot.getHasStack()) {
-                                    toIndex = getNextTargetIndex(shortcut, slot.getStack());
+                                if(!container.isSlotEmpty(shortcut.fromSection, shortcut.fromIndex)) {
+                                    toIndex = getNextTargetIndex(shortcut, container.getItemStack(shortcut.fromSection, shortcut.fromIndex));
                                     if(shortcut.fromSection != ContainerSection.CRAFTING_OUT && shortcut.toSection != ContainerSection.ENCHANTMENT) {
-                                        while(slot.getHasStack() && toIndex != -1) {
+                                        while(!container.isSlotEmpty(shortcut.fromSection, shortcut.fromIndex) && toIndex != -1) {
                                             success = container.move(shortcut.fromSection, shortcut.fromIndex, shortcut.toSection, toIndex);
-                                            newIndex = getNextTargetIndex(shortcut, slot.getStack());
+                                            newIndex = getNextTargetIndex(shortcut, container.getItemStack(shortcut.fromSection, shortcut.fromIndex));
                                             toIndex = (success || (shortcut.action == ShortcutSpecification.Action.DROP) || newIndex != toIndex) ? newIndex : -1; // Needed when we can't put items in the target slot
                                         }
                                     } else {
@@ -360,9 +354,8 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
                             }
 
                             case ONE_ITEM: {
-                                @Nullable Slot slot = container.getSlot(shortcut.fromSection, shortcut.fromIndex);
-                                if(slot.getHasStack()) {
-                                    toIndex = getNextTargetIndex(shortcut, slot.getStack());
+                                if(!container.isSlotEmpty(shortcut.fromSection, shortcut.fromIndex)) {
+                                    toIndex = getNextTargetIndex(shortcut, container.getItemStack(shortcut.fromSection, shortcut.fromIndex));
                                     container.moveSome(shortcut.fromSection, shortcut.fromIndex, shortcut.toSection, toIndex, 1);
                                 }
                                 break;
@@ -394,12 +387,15 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
     }
 
     private void dropAll(@NotNull ShortcutConfig shortcut, @NotNull ItemStack stackToMatch) {
-        container.getSlots(shortcut.fromSection).stream().filter(slot -> slot.getHasStack() && (stackToMatch.isEmpty() || areSameItemType(stackToMatch, slot.getStack()))).forEach(slot -> {
+        for(@NotNull Slot slot : container.getSlots(shortcut.fromSection)) {
             int fromIndex = container.getSlotIndex(getSlotNumber(slot));
-            while(slot.getHasStack()) {
-                container.drop(shortcut.fromSection, fromIndex);
+            @NotNull ItemStack stack = container.getItemStack(shortcut.fromSection, fromIndex);
+            if(!stack.isEmpty() && (stackToMatch.isEmpty() || areSameItemType(stackToMatch, stack))) {
+                while(!container.isSlotEmpty(shortcut.fromSection, fromIndex) && container.drop(shortcut.fromSection, fromIndex)) {
+                    // Keep dropping
+                }
             }
-        });
+        }
     }
 
     private void moveAll(@NotNull ShortcutConfig shortcut, @NotNull ItemStack stackToMatch) {
@@ -409,19 +405,25 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
         boolean success;
 
         for(@NotNull Slot slot : container.getSlots(shortcut.fromSection)) {
-            if(slot.getHasStack() && (stackToMatch.isEmpty() || areSameItemType(stackToMatch, slot.getStack()))) {
-                int fromIndex = container.getSlotIndex(getSlotNumber(slot));
-                toIndex = getNextTargetIndex(shortcut, slot.getStack());
+            int fromIndex = container.getSlotIndex(getSlotNumber(slot));
+            @NotNull ItemStack stack = container.getItemStack(shortcut.fromSection, fromIndex);
+            if(!stack.isEmpty() && (stackToMatch.isEmpty() || areSameItemType(stackToMatch, stack))) {
+                // Where the container routes shift-clicks the same way, one click moves the whole stack
+                if(!shortcut.forceEmptySlot && container.quickMove(shortcut.fromSection, fromIndex, shortcut.toSection)
+                        && container.isSlotEmpty(shortcut.fromSection, fromIndex)) {
+                    continue;
+                }
+                toIndex = getNextTargetIndex(shortcut, container.getItemStack(shortcut.fromSection, fromIndex));
 
                 // Move while current slot has item, and there is a valid target that is not the same slot we're trying
                 // to move from.
-                while(slot.getHasStack() && toIndex != -1 && !(shortcut.fromSection == shortcut.toSection && fromIndex == toIndex)) {
+                while(!container.isSlotEmpty(shortcut.fromSection, fromIndex) && toIndex != -1 && !(shortcut.fromSection == shortcut.toSection && fromIndex == toIndex)) {
                     success = container.move(shortcut.fromSection, fromIndex, shortcut.toSection, toIndex);
-                    newIndex = getNextTargetIndex(shortcut, slot.getStack());
+                    newIndex = getNextTargetIndex(shortcut, container.getItemStack(shortcut.fromSection, fromIndex));
 
                     // This can lead to an infinite loop, but represents some part of the process having gone wrong.
                     // So we want information on why.
-                    if(success && newIndex == toIndex && slot.getHasStack()) {
+                    if(success && newIndex == toIndex && !container.isSlotEmpty(shortcut.fromSection, fromIndex)) {
                         throw new RuntimeException("Inventory in invalid sate after move");
                     }
 
@@ -450,17 +452,7 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
 
         // Try to merge with existing slot
         if(!shortcut.forceEmptySlot) {
-            int i = 0;
-            for(@NotNull Slot slot : container.getSlots(shortcut.toSection)) {
-                if(slot.getHasStack()) {
-                    @NotNull ItemStack stack = slot.getStack();
-                    if(InvTweaksObfuscation.areItemsStackable(current, stack) && stack.getCount() < stack.getMaxStackSize()) {
-                        result = i;
-                        break;
-                    }
-                }
-                i++;
-            }
+            result = container.getFirstStackableIndex(shortcut.toSection, current);
         }
 
         // Else find empty slot
@@ -485,15 +477,20 @@ public class InvTweaksHandlerShortcuts extends InvTweaksObfuscation {
      */
     @Nullable
     public InvTweaksShortcutMapping isShortcutDown(InvTweaksShortcutType type) {
-        List<InvTweaksShortcutMapping> mappings = shortcuts.get(type);
-        if(mappings != null) {
-            for(@NotNull InvTweaksShortcutMapping mapping : mappings) {
-                if(mapping.isTriggered(pressedKeys)) {
-                    return mapping;
+        @NotNull InvTweaksInputState input = InvTweaks.getInstance().getInputState();
+        if(input.getVersion() != resolvedInputVersion) {
+            resolvedInputVersion = input.getVersion();
+            triggeredShortcuts.clear();
+            for(@NotNull Map.Entry<InvTweaksShortcutType, List<InvTweaksShortcutMapping>> entry : shortcuts.entrySet()) {
+                for(@NotNull InvTweaksShortcutMapping mapping : entry.getValue()) {
+                    if(mapping.isTriggered(input)) {
+                        triggeredShortcuts.put(entry.getKey(), mapping);
+                        break;
+                    }
                 }
             }
         }
-        return null;
+        return triggeredShortcuts.get(type);
     }
 
     private static class ShortcutConfig {
@@ -3,8 +3,10 @@ package invtweaks;
 import invtweaks.api.IItemTreeItem;
 import invtweaks.api.SortingMethod;
 import invtweaks.api.container.ContainerSection;
+import invtweaks.container.ContainerSectionLayout;
 import invtweaks.container.ContainerSectionManager;
 import invtweaks.container.IContainerManager;
+import invtweaks.container.SpreadPlan;
 import net.minecraft.client.Minecraft;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.Item;
@@ -32,13 +34,22 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
     private static int[] DEFAULT_LOCK_PRIORITIES = null;
     @Nullable
     private static boolean[] DEFAULT_FROZEN_SLOTS = null;
+    /**
+     * Shared by all the moves of a sort, so that they all see the same (possibly simulated) container.
+     */
+    private IContainerManager globalContainer;
     private ContainerSectionManager containerMgr;
+    /**
+     * The section as it will be once sorted, worked out in memory before any stack is actually moved.
+     */
+    private ContainerSectionLayout layout;
     private SortingMethod algorithm;
     private int size;
     private boolean sortArmorParts;
 
     private InvTweaksItemTree tree;
     private List<InvTweaksConfigSortingRule> rules;
+    private InvTweaksRuleMatches ruleMatches;
     private int[] rulePriority;
     private int[] keywordOrder;
     @Nullable
@@ -47,6 +58,10 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
     private boolean[] frozenSlots;
 
     public InvTweaksHandlerSorting(Minecraft mc_, @NotNull InvTweaksConfig config, ContainerSection section, SortingMethod algorithm_, int rowSize) throws Exception {
+        this(mc_, config, InvTweaks.getCurrentContainerManager(), section, algorithm_, rowSize);
+    }
+
+    public InvTweaksHandlerSorting(Minecraft mc_, @NotNull InvTweaksConfig config, @NotNull IContainerManager globalContainer_, ContainerSection section, SortingMethod algorithm_, int rowSize) throws Exception {
         super(mc_);
 
         // Init constants
@@ -66,7 +81,8 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
 
         // Init attributes
 
-        containerMgr = new ContainerSectionManager(section);
+        globalContainer = globalContainer_;
+        containerMgr = new ContainerSectionManager(globalContainer, section);
         size = containerMgr.getSize();
         sortArmorParts = config.getProperty(InvTweaksConfig.PROP_ENABLE_AUTO_EQUIP_ARMOR).equals(InvTweaksConfig.VALUE_TRUE) && !isGuiInventoryCreative(getCurrentScreen()); // FIXME Armor parts disappear when sorting in creative mode while holding an item
 
@@ -85,32 +101,6 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
             }
         }
 
-        rulePriority = new int[size];
-        keywordOrder = new int[size];
-        for(int i = 0; i < size; i++) {
-            rulePriority[i] = -1;
-            @NotNull ItemStack stack = containerMgr.getItemStack(i);
-            if(!stack.isEmpty()) {
-                keywordOrder[i] = getItemOrder(stack);
-            } else {
-                keywordOrder[i] = -1;
-            }
-        }
-
-        // Initialize rule priority for currently matching items
-        // TODO: J1.8 streams?
-        rules.stream().filter(rule -> (rule.getContainerSize() == size && rule.getPreferredSlots() != null)).forEach(rule -> {
-            int priority = rule.getPriority();
-            for(int slot : rule.getPreferredSlots()) {
-                @NotNull ItemStack stack = containerMgr.getItemStack(slot);
-                if(!stack.isEmpty()) {
-                    @NotNull List<IItemTreeItem> items = tree.getItems(stack.getItem().getRegistryName().toString(), stack.getItemDamage(), stack.getTagCompound());
-                    if(rulePriority[slot] < priority && tree.matches(items, rule.getKeyword())) {
-                        rulePriority[slot] = priority;
-                    }
-                }
-            }
-        });
     }
 
     private static boolean canMergeStacks(@NotNull ItemStack from, @NotNull ItemStack to) {
@@ -130,10 +120,9 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
 
     public void sort() {
         long timer = System.nanoTime();
-        @NotNull IContainerManager globalContainer = InvTweaks.getCurrentContainerManager();
 
         // Put hold item down
-        if(!getHeldStack().isEmpty()) {
+        if(!globalContainer.getHeldStack().isEmpty()) {
             int emptySlot = globalContainer.getFirstEmptyIndex(ContainerSection.INVENTORY);
             if(emptySlot != -1) {
                 globalContainer.putHoldItemDown(ContainerSection.INVENTORY, emptySlot);
@@ -142,11 +131,26 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
             }
         }
 
+        //// Partial moves and moves to other sections are done right away
+        if(algorithm == SortingMethod.EVEN_STACKS) {
+            sortEvenStacks();
+        } else if(algorithm == SortingMethod.INVENTORY) {
+            sortInventory(globalContainer);
+        }
+
+        //// Work out the sorted layout in memory
+        layout = new ContainerSectionLayout(containerMgr);
+        ruleMatches = new InvTweaksRuleMatches(tree, rules, layout);
+        initPriorities();
+
         if(algorithm != SortingMethod.DEFAULT) {
             if(algorithm == SortingMethod.EVEN_STACKS) {
-                sortEvenStacks();
+                //mark all items as moved. (is there a better way?)
+                for(int i = 0; i < size; i++) {
+                    markAsMoved(i, 1);
+                }
             } else if(algorithm == SortingMethod.INVENTORY) {
-                sortInventory(globalContainer);
+                mergeLockedStacks();
             }
             sortWithRules();
         }
@@ -154,13 +158,18 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
         //// Sort remaining
         defaultSorting();
 
+        //// Then move the stacks for real
+        if(!layout.apply()) {
+            log.warn("Sorting could not be fully applied.");
+        }
+
         if(log.isEnabled(InvTweaksConst.DEBUG)) {
             timer = System.nanoTime() - timer;
             log.info("Sorting done in " + timer + "ns");
         }
 
         //// Put hold item down, just in case
-        if(!getHeldStack().isEmpty()) {
+        if(!globalContainer.getHeldStack().isEmpty()) {
             int emptySlot = globalContainer.getFirstEmptyIndex(ContainerSection.INVENTORY);
             if(emptySlot != -1) {
                 globalContainer.putHoldItemDown(ContainerSection.INVENTORY, emptySlot);
@@ -170,12 +179,40 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
         globalContainer.applyChanges();
     }
 
+    private void initPriorities() {
+        rulePriority = new int[size];
+        keywordOrder = new int[size];
+        for(int i = 0; i < size; i++) {
+            rulePriority[i] = -1;
+            @NotNull ItemStack stack = layout.getItemStack(i);
+            if(!stack.isEmpty()) {
+                keywordOrder[i] = getItemOrder(stack);
+            } else {
+                keywordOrder[i] = -1;
+            }
+        }
+
+        // Initialize rule priority for currently matching items
+        for(int r = 0; r < rules.size(); r++) {
+            @NotNull InvTweaksConfigSortingRule rule = rules.get(r);
+            if(rule.getContainerSize() == size && rule.getPreferredSlots() != null) {
+                int priority = rule.getPriority();
+                for(int slot : rule.getPreferredSlots()) {
+                    if(rulePriority[slot] < priority && ruleMatches.matches(slot, r)) {
+                        rulePriority[slot] = priority;
+                    }
+                }
+            }
+        }
+    }
+
     private void sortWithRules() {
         //// Apply rules
         log.info("Applying rules.");
 
         // Sorts rule by rule, themselves being already sorted by decreasing priority
-        for(@NotNull InvTweaksConfigSortingRule rule : rules) {
+        for(int r = 0; r < rules.size(); r++) {
+            @NotNull InvTweaksConfigSortingRule rule = rules.get(r);
             int priority = rule.getPriority();
 
             if(log.isEnabled(InvTweaksConst.DEBUG)) {
@@ -184,13 +221,9 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
 
             // For every item in the inventory
             for(int i = 0; i < size; i++) {
-                @NotNull ItemStack from = containerMgr.getItemStack(i);
-
                 // If the rule is strong enough to move the item and it matches the item, move it
                 if(hasToBeMoved(i, priority) && lockPriorities[i] < priority) {
-                    // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-                    @NotNull List<IItemTreeItem> fromItems = tree.getItems(from.getItem().getRegistryName().toString(), from.getItemDamage(), from.getTagCompound());
-                    if(tree.matches(fromItems, rule.getKeyword())) {
+                    if(ruleMatches.matches(i, r)) {
 
                         // Test preferred slots
                         int[] preferredSlots = rule.getPreferredSlots();
@@ -202,10 +235,7 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
                                 if(moveResult == k) {
                                     break;
                                 } else {
-                                    from = containerMgr.getItemStack(moveResult);
-                                    // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-                                    fromItems = tree.getItems(from.getItem().getRegistryName().toString(), from.getItemDamage(), from.getTagCompound());
-                                    if(tree.matches(fromItems, rule.getKeyword())) {
+                                    if(ruleMatches.matches(moveResult, r)) {
                                         if(i >= moveResult) {
                                             // Current or already-processed slot.
                                             stackToMove = moveResult;
@@ -254,26 +284,31 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
             }
         }
 
-        sortMergeArmor(globalContainer);
+        sortArmor(globalContainer);
     }
 
-    private void sortMergeArmor(@NotNull IContainerManager globalContainer) {
-        //// Merge stacks to fill the ones in locked slots
-        //// + Move armor parts to the armor slots
-        log.info("Merging stacks.");
+    private void sortArmor(@NotNull IContainerManager globalContainer) {
+        //// Move armor parts to the armor slots
         for(int i = size - 1; i >= 0; i--) {
             @NotNull ItemStack from = containerMgr.getItemStack(i);
             if(!from.isEmpty()) {
-                // Move armor parts
                 // Item
                 @NotNull Item fromItem = from.getItem();
                 if(fromItem.isDamageable()) {
                     moveArmor(globalContainer, i, from, fromItem);
                 }
-                // Stackable objects are never damageable
-                else {
-                    mergeItem(i, from);
-                }
+            }
+        }
+    }
+
+    private void mergeLockedStacks() {
+        //// Merge stacks to fill the ones in locked slots
+        log.info("Merging stacks.");
+        for(int i = size - 1; i >= 0; i--) {
+            @NotNull ItemStack from = layout.getItemStack(i);
+            // Stackable objects are never damageable
+            if(!from.isEmpty() && !from.getItem().isDamageable()) {
+                mergeItem(i, from);
             }
         }
     }
@@ -282,11 +317,11 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
         int j = 0;
         for(Integer lockPriority : lockPriorities) {
             if(lockPriority > 0) {
-                @NotNull ItemStack to = containerMgr.getItemStack(j);
+                @NotNull ItemStack to = layout.getItemStack(j);
                 if(!to.isEmpty() && areItemsStackable(from, to)) {
                     move(i, j, Integer.MAX_VALUE);
                     markAsNotMoved(j);
-                    if(containerMgr.getItemStack(i).isEmpty()) {
+                    if(layout.getItemStack(i).isEmpty()) {
                         break;
                     }
                 }
@@ -302,20 +337,23 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
                 @NotNull ItemArmor fromItemArmor = (ItemArmor) fromItem;
                 if(globalContainer.hasSection(ContainerSection.ARMOR)) {
                     List<Slot> armorSlots = globalContainer.getSlots(ContainerSection.ARMOR);
-                    for(@NotNull Slot slot : armorSlots) {
+                    for(int armorIndex = 0; armorIndex < armorSlots.size(); armorIndex++) {
+                        @NotNull Slot slot = armorSlots.get(armorIndex);
+                        // The container may be mirrored, read the stack moves left there
+                        @NotNull ItemStack current = globalContainer.getItemStack(ContainerSection.ARMOR, armorIndex);
                         boolean move = false;
-                        if(!slot.getHasStack()) {
+                        if(current.isEmpty()) {
                             move = true;
                         } else {
                             // Item
-                            @NotNull Item currentArmor = slot.getStack().getItem();
+                            @NotNull Item currentArmor = current.getItem();
                             if(isItemArmor(currentArmor)) {
                                 // ItemArmor
                                 // ItemArmor
                                 int armorLevel = ((ItemArmor) currentArmor).damageReduceAmount;
                                 // ItemArmor
                                 // ItemArmor
-                                if(armorLevel < fromItemArmor.damageReduceAmount || (armorLevel == fromItemArmor.damageReduceAmount && slot.getStack().getItemDamage() < from.getItemDamage())) {
+                                if(armorLevel < fromItemArmor.damageReduceAmount || (armorLevel == fromItemArmor.damageReduceAmount && current.getItemDamage() < from.getItemDamage())) {
                                     move = true;
                                 }
                             } else {
@@ -323,7 +361,7 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
                             }
                         }
                         if(slot.isItemValid(from) && move) {
-                            globalContainer.move(ContainerSection.INVENTORY, i, ContainerSection.ARMOR, globalContainer.getSlotIndex(getSlotNumber(slot)));
+                            globalContainer.move(ContainerSection.INVENTORY, i, ContainerSection.ARMOR, armorIndex);
                         }
                     }
                 }
@@ -361,54 +399,109 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
             //skip hacked itemstacks that are larger than their max size
             //no idea why they would be here, but may as well account for them anyway
             // TODO: ResourceLocation
-            if(numPerSlot <= new ItemStack(Item.REGISTRY.getObject(new ResourceLocation(item.getLeft())), 1, 0).getMaxStackSize()) {
-                //linkedlists to store which stacks have too many/few items
-                @NotNull LinkedList<Integer> smallStacks = new LinkedList<>();
-                @NotNull LinkedList<Integer> largeStacks = new LinkedList<>();
-                for(int i = 0; i < size; i++) {
-                    @NotNull ItemStack stack = containerMgr.getItemStack(i);
-                    // TODO: ResourceLocation
-                    if(!stack.isEmpty() && Pair.of(stack.getItem().getRegistryName().toString(), stack.getItemDamage()).equals(item)) {
-                        int stackSize = stack.getCount();
-                        if(stackSize > numPerSlot) {
-                            largeStacks.offer(i);
-                        } else if(stackSize < numPerSlot) {
-                            smallStacks.offer(i);
-                        }
-                    }
+            int maxStackSize = new ItemStack(Item.REGISTRY.getObject(new ResourceLocation(item.getLeft())), 1, 0).getMaxStackSize();
+            if(numPerSlot <= maxStackSize) {
+                if(!spreadEvenly(item, count, numPerSlot, maxStackSize)) {
+                    // Some slots refused the planned clicks, finish item by item
+                    evenStacksByMoves(item, numPerSlot);
                 }
+            }
+        }
 
-                //move items from stacks with too many to those with too little
-                while((!smallStacks.isEmpty())) {
-                    int largeIndex = largeStacks.peek();
-                    int largeSize = containerMgr.getItemStack(largeIndex).getCount();
-                    int smallIndex = smallStacks.peek();
-                    int smallSize = containerMgr.getItemStack(smallIndex).getCount();
-                    containerMgr.moveSome(largeIndex, smallIndex, Math.min(numPerSlot - smallSize, largeSize - numPerSlot));
-
-                    //update stack lists
-                    largeSize = containerMgr.getItemStack(largeIndex).getCount();
-                    smallSize = containerMgr.getItemStack(smallIndex).getCount();
-                    if(largeSize == numPerSlot) {
-                        largeStacks.remove();
-                    }
-                    if(smallSize == numPerSlot) {
-                        smallStacks.remove();
-                    }
-                }
+    }
 
-                //put all leftover into one stack for easy removal
-                while(largeStacks.size() > 1) {
-                    int largeIndex = largeStacks.poll();
-                    int largeSize = containerMgr.getItemStack(largeIndex).getCount();
-                    containerMgr.moveSome(largeIndex, largeStacks.peek(), largeSize - numPerSlot);
+    /**
+     * Evens stacks of an item out by picking up stacks that are too large and spreading them over the smaller ones.
+     *
+     * @param count Amount of items and number of slots with the item
+     * @return false if the stacks could not be brought to the planned counts.
+     */
+    private boolean spreadEvenly(@NotNull Pair<String, Integer> item, @NotNull int[] count, int numPerSlot, int maxStackSize) {
+        @NotNull int[] indexes = new int[count[1]];
+        @NotNull int[] counts = new int[count[1]];
+        int n = 0;
+        for(int i = 0; i < size; i++) {
+            @NotNull ItemStack stack = containerMgr.getItemStack(i);
+            // TODO: ResourceLocation
+            if(!stack.isEmpty() && Pair.of(stack.getItem().getRegistryName().toString(), stack.getItemDamage()).equals(item)) {
+                indexes[n] = i;
+                counts[n] = stack.getCount();
+                n++;
+            }
+        }
+
+        //leftovers go into the largest stacks for easy removal
+        @NotNull int[] targets = new int[n];
+        Arrays.fill(targets, numPerSlot);
+        int leftover = count[0] - numPerSlot * n;
+        while(leftover > 0) {
+            int largest = -1;
+            for(int k = 0; k < n; k++) {
+                if(targets[k] == numPerSlot && (largest == -1 || counts[k] > counts[largest])) {
+                    largest = k;
                 }
             }
+            if(largest == -1) {
+                break;
+            }
+            int extra = Math.min(leftover, maxStackSize - numPerSlot);
+            targets[largest] += extra;
+            leftover -= extra;
+        }
+
+        @NotNull SpreadPlan plan = SpreadPlan.plan(indexes, counts, targets);
+        if(plan.apply(containerMgr)) {
+            return true;
+        }
+
+        // Put back what the plan left in hand
+        for(int k = 0; k < n && !containerMgr.getHeldStack().isEmpty(); k++) {
+            containerMgr.leftClick(indexes[k]);
         }
+        return false;
+    }
 
-        //mark all items as moved. (is there a better way?)
+    private void evenStacksByMoves(@NotNull Pair<String, Integer> item, int numPerSlot) {
+        //linkedlists to store which stacks have too many/few items
+        @NotNull LinkedList<Integer> smallStacks = new LinkedList<>();
+        @NotNull LinkedList<Integer> largeStacks = new LinkedList<>();
         for(int i = 0; i < size; i++) {
-            markAsMoved(i, 1);
+            @NotNull ItemStack stack = containerMgr.getItemStack(i);
+            // TODO: ResourceLocation
+            if(!stack.isEmpty() && Pair.of(stack.getItem().getRegistryName().toString(), stack.getItemDamage()).equals(item)) {
+                int stackSize = stack.getCount();
+                if(stackSize > numPerSlot) {
+                    largeStacks.offer(i);
+                } else if(stackSize < numPerSlot) {
+                    smallStacks.offer(i);
+                }
+            }
+        }
+
+        //move items from stacks with too many to those with too little
+        while((!smallStacks.isEmpty())) {
+            int largeIndex = largeStacks.peek();
+            int largeSize = containerMgr.getItemStack(largeIndex).getCount();
+            int smallIndex = smallStacks.peek();
+            int smallSize = containerMgr.getItemStack(smallIndex).getCount();
+            containerMgr.moveSome(largeIndex, smallIndex, Math.min(numPerSlot - smallSize, largeSize - numPerSlot));
+
+            //update stack lists
+            largeSize = containerMgr.getItemStack(largeIndex).getCount();
+            smallSize = containerMgr.getItemStack(smallIndex).getCount();
+            if(largeSize == numPerSlot) {
+                largeStacks.remove();
+            }
+            if(smallSize == numPerSlot) {
+                smallStacks.remove();
+            }
+        }
+
+        //put all leftover into one stack for easy removal
+        while(largeStacks.size() > 1) {
+            int largeIndex = largeStacks.poll();
+            int largeSize = containerMgr.getItemStack(largeIndex).getCount();
+            containerMgr.moveSome(largeIndex, largeStacks.peek(), largeSize - numPerSlot);
         }
     }
 
@@ -460,7 +553,7 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
      * @return -1 if it failed, j if the stacks were merged into one, n if the j stack has been moved to the n slot.
      */
     private int move(int i, int j, int priority) {
-        @NotNull ItemStack from = containerMgr.getItemStack(i), to = containerMgr.getItemStack(j);
+        @NotNull ItemStack from = layout.getItemStack(i), to = layout.getItemStack(j);
 
         if(from.isEmpty() || frozenSlots[j] || frozenSlots[i]) {
             return -1;
@@ -481,7 +574,9 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
                 keywordOrder[i] = -1;
                 rulePriority[j] = priority;
                 keywordOrder[j] = getItemOrder(from);
-                if(containerMgr.move(i, j)) {
+                if(layout.move(i, j)) {
+                    ruleMatches.refresh(i);
+                    ruleMatches.refresh(j);
                     return j;
                 } else {
                     return -1;
@@ -494,26 +589,30 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
                     keywordOrder[j] = keywordOrder[i];
                     rulePriority[j] = priority;
                     rulePriority[i] = -1;
-                    boolean success = containerMgr.move(i, j);
+                    boolean success = layout.move(i, j);
 
                     if(success) {
-                        @NotNull ItemStack remains = containerMgr.getItemStack(i);
+                        ruleMatches.refresh(i);
+                        ruleMatches.refresh(j);
+                        @NotNull ItemStack remains = layout.getItemStack(i);
 
                         if(!remains.isEmpty()) {
                             int dropSlot = i;
                             if(lockPriorities[j] > lockPriorities[i]) {
                                 for(int k = 0; k < size; k++) {
-                                    if(containerMgr.getItemStack(k).isEmpty() && lockPriorities[k] == 0) {
+                                    if(layout.getItemStack(k).isEmpty() && lockPriorities[k] == 0) {
                                         dropSlot = k;
                                         break;
                                     }
                                 }
                             }
                             if(dropSlot != i) {
-                                if(!containerMgr.move(i, dropSlot)) {
+                                if(!layout.move(i, dropSlot)) {
                                     // TODO: This is a potentially bad situation: One move succeeded, then the rest failed.
                                     return -1;
                                 }
+                                ruleMatches.refresh(i);
+                                ruleMatches.refresh(dropSlot);
                             }
                             rulePriority[dropSlot] = -1;
                             keywordOrder[dropSlot] = getItemOrder(remains);
@@ -541,19 +640,17 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
     }
 
     private boolean hasToBeMoved(int slot, int priority) {
-        return !containerMgr.getItemStack(slot).isEmpty() && rulePriority[slot] <= priority;
+        return !layout.getItemStack(slot).isEmpty() && rulePriority[slot] <= priority;
     }
 
     private boolean isOrderedBefore(int i, int j) {
-        @NotNull ItemStack iStack = containerMgr.getItemStack(i), jStack = containerMgr.getItemStack(j);
+        @NotNull ItemStack iStack = layout.getItemStack(i), jStack = layout.getItemStack(j);
 
         return InvTweaks.getInstance().compareItems(iStack, jStack, keywordOrder[i], keywordOrder[j]) < 0;
     }
 
     private int getItemOrder(@NotNull ItemStack itemStack) {
-        // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-        @NotNull List<IItemTreeItem> items = tree.getItems(itemStack.getItem().getRegistryName().toString(), itemStack.getItemDamage(), itemStack.getTagCompound());
-        return (items.size() > 0) ? items.get(0).getOrder() : Integer.MAX_VALUE;
+        return ruleMatches.getOrder(itemStack);
     }
 
     private void computeLineSortingRules(int rowSize, boolean horizontal) {
@@ -703,7 +800,7 @@ public class InvTweaksHandlerSorting extends InvTweaksObfuscation {
                 IItemTreeItem item = itemSearch.get(itemSearchKey);
                 if(item == null) {
                     // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
-                    item = tree.getItems(stack.getItem().getRegistryName().toString(), stack.getItemDamage(), stack.getTagCompound()).get(0);
+                    item = tree.getMatchingItems(stack.getItem().getRegistryName().toString(), stack.getItemDamage(), stack.getTagCompound()).get(0);
                     itemSearch.put(itemSearchKey, item);
                     stats.put(item, 1);
                 } else {
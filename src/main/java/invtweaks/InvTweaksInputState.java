@@ -0,0 +1,81 @@
+package invtweaks;
+
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.input.Keyboard;
+import org.lwjgl.input.Mouse;
+
+import java.util.BitSet;
+
+/**
+ * Which keys and mouse buttons are down, kept up to date from Forge's input events (see ClientProxy) instead of asking
+ * LWJGL about every key on every tick. Each change bumps a version number, so that shortcuts only need to be resolved
+ * again when it differs from the last one seen.
+ */
+public class InvTweaksInputState {
+    /**
+     * Mouse buttons are stored after the keys.
+     */
+    private static final int MOUSE_OFFSET = Keyboard.KEYBOARD_SIZE;
+    private static final int MOUSE_BUTTONS = 16;
+
+    @NotNull
+    private final BitSet down = new BitSet(MOUSE_OFFSET + MOUSE_BUTTONS);
+    private int version = 0;
+
+    /**
+     * Records the current LWJGL keyboard event.
+     */
+    public void onKeyboardEvent() {
+        int keyCode = Keyboard.getEventKey();
+        if(keyCode > 0 && keyCode < MOUSE_OFFSET) {
+            set(keyCode, Keyboard.getEventKeyState());
+        }
+    }
+
+    /**
+     * Records the current LWJGL mouse event.
+     */
+    public void onMouseEvent() {
+        int button = Mouse.getEventButton();
+        if(button >= 0 && button < MOUSE_BUTTONS) {
+            set(MOUSE_OFFSET + button, Mouse.getEventButtonState());
+        }
+    }
+
+    /**
+     * Reads every key and button from LWJGL, for when events may have been missed: when the window gets the focus
+     * back, when a screen opens or closes, or after the mouse was reset.
+     */
+    public void resync() {
+        boolean keyboard = Keyboard.isCreated();
+        for(int keyCode = 1; keyCode < MOUSE_OFFSET; keyCode++) {
+            set(keyCode, keyboard && Keyboard.isKeyDown(keyCode));
+        }
+        int buttons = Mouse.isCreated() ? Math.min(MOUSE_BUTTONS, Mouse.getButtonCount()) : 0;
+        for(int button = 0; button < MOUSE_BUTTONS; button++) {
+            set(MOUSE_OFFSET + button, button < buttons && Mouse.isButtonDown(button));
+        }
+    }
+
+    public boolean isKeyDown(int keyCode) {
+        return keyCode > 0 && keyCode < MOUSE_OFFSET && down.get(keyCode);
+    }
+
+    public boolean isButtonDown(int button) {
+        return button >= 0 && button < MOUSE_BUTTONS && down.get(MOUSE_OFFSET + button);
+    }
+
+    /**
+     * @return A number that changes whenever a key or button is pressed or released.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    private void set(int bit, boolean value) {
+        if(down.get(bit) != value) {
+            down.set(bit, value);
+            version++;
+        }
+    }
+}
@@ -4,16 +4,16 @@ package invtweaks;
 import invtweaks.api.IItemTree;
 import invtweaks.api.IItemTreeCategory;
 import invtweaks.api.IItemTreeItem;
-import net.minecraft.creativetab.CreativeTabs;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemArmor;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTUtil;
-import net.minecraft.util.NonNullList;
-import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
-import net.minecraftforge.fml.common.registry.ForgeRegistries;
 import net.minecraftforge.oredict.OreDictionary;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -48,19 +48,66 @@ public class InvTweaksItemTree implements IItemTree {
      */
     @NotNull
     private Map<String, List<IItemTreeItem>> itemsByName = new HashMap<>(500);
+    /**
+     * Items matching an (ID, damage) pair, compiled when the tree file has been read and completed on demand.
+     * Entries are shared between callers, and dropped for an ID whenever an item with that ID is added.
+     */
+    @NotNull
+    private Map<String, Int2ObjectMap<ResolvedItems>> resolvedItems = new HashMap<>(500);
+    /**
+     * Keyword orders, compiled along with the resolved items. Cleared whenever the tree changes.
+     */
+    @NotNull
+    private Object2IntMap<String> keywordOrders = new Object2IntOpenHashMap<>(500);
+    /**
+     * Dense category IDs, stored by name, and the IDs of each category and its ancestors.
+     */
+    @NotNull
+    private Object2IntMap<String> categoryIds = new Object2IntOpenHashMap<>();
+    @NotNull
+    private List<BitSet> categoryAncestors = new ArrayList<>();
+    /**
+     * Items registered in this tree, indexed by their dense ID, along with the categories they were added to (and
+     * their ancestors) and the categories that contain them, computed on demand.
+     */
+    @NotNull
+    private List<InvTweaksItemTreeItem> indexedItems = new ArrayList<>(500);
+    @NotNull
+    private List<BitSet> itemAncestors = new ArrayList<>(500);
+    @NotNull
+    private List<BitSet> itemMemberships = new ArrayList<>(500);
 
     private String rootCategory;
     @NotNull
     private List<OreDictInfo> oresRegistered = new ArrayList<>();
 
+    /**
+     * Items the tree file is read against, gathered on the client thread. Only kept until the file has been read.
+     */
+    @Nullable
+    private InvTweaksGameItems gameItems = null;
+    /**
+     * Class rules read from the tree file, resolved all at once when the file has been read. Meanwhile, items are kept
+     * in pendingItems so that they are added in the same order as in the file.
+     */
+    @NotNull
+    private List<ClassRule> pendingClassRules = new ArrayList<>();
     @NotNull
-    private List<ItemStack> allGameItems = new ArrayList<ItemStack>();
+    private List<PendingItem> pendingItems = new ArrayList<>();
 
     private int highestOrder = 0;
 
     private int lastTreeOrder = 0;
 
+    /**
+     * Records what is registered while the tree file is read, if a snapshot was requested.
+     */
+    @Nullable
+    private InvTweaksItemTreeSnapshot snapshot = null;
+
     public InvTweaksItemTree() {
+        keywordOrders.defaultReturnValue(Integer.MIN_VALUE);
+        categoryIds.defaultReturnValue(-1);
         reset();
     }
 
@@ -75,6 +122,15 @@ public class InvTweaksItemTree implements IItemTree {
         categories.clear();
         itemsByName.clear();
         itemsById.clear();
+        resolvedItems.clear();
+        keywordOrders.clear();
+        categoryIds.clear();
+        categoryAncestors.clear();
+        indexedItems.clear();
+        itemAncestors.clear();
+        itemMemberships.clear();
+        pendingClassRules.clear();
+        pendingItems.clear();
 
     }
 
@@ -99,8 +155,10 @@ public class InvTweaksItemTree implements IItemTree {
         // The keyword is a category
         IItemTreeCategory category = getCategory(keyword);
         if(category != null) {
+            int categoryId = categoryIds.getInt(keyword);
             for(IItemTreeItem item : items) {
-                if(category.contains(item)) {
+                @Nullable BitSet membership = (categoryId != -1) ? getMembership(item) : null;
+                if(membership != null ? membership.get(categoryId) : category.contains(item)) {
                     return true;
                 }
             }
@@ -123,17 +181,24 @@ public class InvTweaksItemTree implements IItemTree {
 
     @Override
     public int getKeywordOrder(String keyword) {
+        int order = keywordOrders.getInt(keyword);
+        if(order != Integer.MIN_VALUE) {
+            return order;
+        }
+
         List<IItemTreeItem> items = getItems(keyword);
         if(items != null && items.size() != 0) {
-            return items.get(0).getOrder();
+            order = items.get(0).getOrder();
         } else {
             try {
-                return getRootCategory().findCategoryOrder(keyword);
+                order = getRootCategory().findCategoryOrder(keyword);
             } catch(NullPointerException e) {
                 log.error("The root category is missing: " + e.getMessage());
                 return -1;
             }
         }
+        keywordOrders.put(keyword, order);
+        return order;
     }
 
     /**
@@ -170,8 +235,12 @@ public class InvTweaksItemTree implements IItemTree {
 
     @Override
     public void setRootCategory(@NotNull IItemTreeCategory category) {
+        if(snapshot != null) {
+            snapshot.recordRoot(category.getName());
+        }
         rootCategory = category.getName();
         categories.put(rootCategory, category);
+        registerCategoryId(category, null);
     }
 
     @Override
@@ -184,47 +253,85 @@ public class InvTweaksItemTree implements IItemTree {
         return itemsById.get(id) == null;
     }
 
+    /**
+     * Returns a copy of the items matching the given ID, damage and extra data, that callers are free to modify.
+     */
     @NotNull
     @Override
     public List<IItemTreeItem> getItems(@Nullable String id, int damage, @Nullable NBTTagCompound extra) {
+        return new ArrayList<>(getMatchingItems(id, damage, extra));
+    }
+
+    /**
+     * Returns the items matching the given ID, damage and extra data, without copying them. Unless some of the
+     * candidate items define extra data, the returned list is shared and must not be modified.
+     */
+    @NotNull
+    List<IItemTreeItem> getMatchingItems(@Nullable String id, int damage, @Nullable NBTTagCompound extra) {
         if(id == null) {
-            return new ArrayList<>();
+            return Collections.emptyList();
         }
 
-        List<IItemTreeItem> items = itemsById.get(id);
-        @NotNull List<IItemTreeItem> filteredItems = new ArrayList<>();
-        if(items != null) {
-            filteredItems.addAll(items);
+        @NotNull ResolvedItems resolved = resolveItems(id, damage);
+        if(extra == null || !resolved.hasExtraData) {
+            if(!resolved.items.isEmpty()) {
+                return resolved.items;
+            }
+        } else {
+            // Filter items that don't match extra data
+            @NotNull List<IItemTreeItem> filteredItems = new ArrayList<>(resolved.items.size());
+            for(@NotNull IItemTreeItem item : resolved.items) {
+                if(NBTUtil.areNBTEquals(item.getExtraData(), extra, true)) {
+                    filteredItems.add(item);
+                }
+            }
+            if(!filteredItems.isEmpty()) {
+                return filteredItems;
+            }
         }
 
-        // Filter items of same ID, but different damage value
-        if(items != null && !items.isEmpty()) {
-            items.stream().filter(item -> item.getDamage() != InvTweaksConst.DAMAGE_WILDCARD && item.getDamage() != damage).forEach(filteredItems::remove);
-        }
+        // If there's no matching item, create new ones
+        int newItemOrder = highestOrder + 1;
+        @NotNull IItemTreeItem newItemId = new InvTweaksItemTreeItem(String.format("%s-%d", id, damage), id, damage, null, newItemOrder, getRootCategory().getName() + "\\_uncategorized\\" + String.format("%s-%d", id, damage));
+        @NotNull IItemTreeItem newItemDamage = new InvTweaksItemTreeItem(id, id, InvTweaksConst.DAMAGE_WILDCARD, null, newItemOrder, getRootCategory().getName() + "\\_uncategorized\\" + id);
+        addItem(getRootCategory().getName(), newItemId);
+        addItem(getRootCategory().getName(), newItemDamage);
 
-        items = filteredItems;
-        filteredItems = new ArrayList<>(items);
+        @NotNull List<IItemTreeItem> newItems = new ArrayList<>(2);
+        newItems.add(newItemId);
+        newItems.add(newItemDamage);
+        return newItems;
 
-        // Filter items that don't match extra data
-        if(extra != null && !items.isEmpty()) {
-            items.stream().filter(item -> !NBTUtil.areNBTEquals(item.getExtraData(), extra, true)).forEach(filteredItems::remove);
-        }
+    }
 
-        // If there's no matching item, create new ones
-        if(filteredItems.isEmpty()) {
-            int newItemOrder = highestOrder + 1;
-            @NotNull IItemTreeItem newItemId = new InvTweaksItemTreeItem(String.format("%s-%d", id, damage), id, damage, null, newItemOrder, getRootCategory().getName() + "\\_uncategorized\\" + String.format("%s-%d", id, damage));
-            @NotNull IItemTreeItem newItemDamage = new InvTweaksItemTreeItem(id, id, InvTweaksConst.DAMAGE_WILDCARD, null, newItemOrder, getRootCategory().getName() + "\\_uncategorized\\" + id);
-            addItem(getRootCategory().getName(), newItemId);
-            addItem(getRootCategory().getName(), newItemDamage);
-            filteredItems.add(newItemId);
-            filteredItems.add(newItemDamage);
+    /**
+     * Finds the items of the given ID that match the given damage value, ignoring extra data.
+     */
+    @NotNull
+    private ResolvedItems resolveItems(@NotNull String id, int damage) {
+        Int2ObjectMap<ResolvedItems> byDamage = resolvedItems.get(id);
+        if(byDamage == null) {
+            byDamage = new Int2ObjectOpenHashMap<>();
+            resolvedItems.put(id, byDamage);
         }
 
-        filteredItems.removeIf(Objects::isNull);
-
-        return filteredItems;
-
+        ResolvedItems resolved = byDamage.get(damage);
+        if(resolved == null) {
+            @NotNull List<IItemTreeItem> matchingItems = new ArrayList<>();
+            boolean hasExtraData = false;
+            List<IItemTreeItem> items = itemsById.get(id);
+            if(items != null) {
+                for(@Nullable IItemTreeItem item : items) {
+                    if(item != null && (item.getDamage() == InvTweaksConst.DAMAGE_WILDCARD || item.getDamage() == damage)) {
+                        matchingItems.add(item);
+                        hasExtraData |= item.getExtraData() != null;
+                    }
+                }
+            }
+            resolved = new ResolvedItems(matchingItems.isEmpty() ? Collections.<IItemTreeItem>emptyList() : Collections.unmodifiableList(matchingItems), hasExtraData);
+            byDamage.put(damage, resolved);
+        }
+        return resolved;
     }
 
     @NotNull
@@ -278,15 +385,30 @@ public class InvTweaksItemTree implements IItemTree {
 
     @Override
     public void addCategory(String parentCategory, @NotNull IItemTreeCategory newCategory) throws NullPointerException {
+        if(snapshot != null) {
+            snapshot.recordCategory(parentCategory, newCategory.getName());
+        }
+
         // Build tree
         categories.get(parentCategory).addCategory(newCategory);
 
         // Register category
         categories.put(newCategory.getName(), newCategory);
+        registerCategoryId(newCategory, parentCategory);
+        keywordOrders.clear();
     }
 
     @Override
     public void addItem(String parentCategory, @NotNull IItemTreeItem newItem) throws NullPointerException {
+        if(!pendingClassRules.isEmpty()) {
+            pendingItems.add(new PendingItem(parentCategory, newItem, null));
+            return;
+        }
+
+        if(snapshot != null && newItem instanceof InvTweaksItemTreeItem) {
+            snapshot.recordItem(parentCategory, (InvTweaksItemTreeItem) newItem);
+        }
+
         highestOrder = Math.max(highestOrder, newItem.getOrder());
 
         // Build tree
@@ -307,6 +429,85 @@ public class InvTweaksItemTree implements IItemTree {
             list.add(newItem);
             itemsById.put(newItem.getId(), list);
         }
+
+        // Index item, and invalidate compiled lookups
+        registerItemId(parentCategory, newItem);
+        resolvedItems.remove(newItem.getId());
+        keywordOrders.clear();
+    }
+
+    private void registerCategoryId(@NotNull IItemTreeCategory category, @Nullable String parentCategory) {
+        int parentId = (parentCategory != null) ? categoryIds.getInt(parentCategory) : -1;
+
+        // Categories built outside of the tree (or below one) keep using IItemTreeCategory.contains()
+        if((parentCategory != null && parentId == -1) || !category.getSubCategories().isEmpty() || !category.getItems().isEmpty()) {
+            categoryIds.removeInt(category.getName());
+            return;
+        }
+
+        int id = categoryAncestors.size();
+        @NotNull BitSet ancestors = (parentId != -1) ? (BitSet) categoryAncestors.get(parentId).clone() : new BitSet();
+        ancestors.set(id);
+        categoryAncestors.add(ancestors);
+        categoryIds.put(category.getName(), id);
+    }
+
+    private void registerItemId(String parentCategory, @NotNull IItemTreeItem newItem) {
+        int parentId = categoryIds.getInt(parentCategory);
+        if(!(newItem instanceof InvTweaksItemTreeItem) || parentId == -1) {
+            return;
+        }
+
+        @NotNull InvTweaksItemTreeItem item = (InvTweaksItemTreeItem) newItem;
+        if(isIndexed(item)) {
+            // Same item added to several categories
+            @NotNull BitSet ancestors = (BitSet) itemAncestors.get(item.treeIndex).clone();
+            ancestors.or(categoryAncestors.get(parentId));
+            itemAncestors.set(item.treeIndex, ancestors);
+        } else {
+            item.treeIndex = indexedItems.size();
+            indexedItems.add(item);
+            itemAncestors.add(categoryAncestors.get(parentId));
+            itemMemberships.add(null);
+        }
+
+        // Items of the same ID may now be contained in more categories
+        for(@Nullable IItemTreeItem sameIdItem : itemsById.get(newItem.getId())) {
+            if(sameIdItem instanceof InvTweaksItemTreeItem && isIndexed((InvTweaksItemTreeItem) sameIdItem)) {
+                itemMemberships.set(((InvTweaksItemTreeItem) sameIdItem).treeIndex, null);
+            }
+        }
+    }
+
+    private boolean isIndexed(@NotNull InvTweaksItemTreeItem item) {
+        return item.treeIndex >= 0 && item.treeIndex < indexedItems.size() && indexedItems.get(item.treeIndex) == item;
+    }
+
+    /**
+     * @return The IDs of all categories that contain the given item (as IItemTreeCategory.contains() would tell), or
+     * null if the item (or an item of the same ID) is not indexed in this tree.
+     */
+    @Nullable
+    private BitSet getMembership(@NotNull IItemTreeItem item) {
+        if(!(item instanceof InvTweaksItemTreeItem) || !isIndexed((InvTweaksItemTreeItem) item)) {
+            return null;
+        }
+
+        int index = ((InvTweaksItemTreeItem) item).treeIndex;
+        BitSet membership = itemMemberships.get(index);
+        if(membership == null) {
+            membership = new BitSet();
+            for(@Nullable IItemTreeItem storedItem : itemsById.get(item.getId())) {
+                if(storedItem != null && storedItem.equals(item)) {
+                    if(!(storedItem instanceof InvTweaksItemTreeItem) || !isIndexed((InvTweaksItemTreeItem) storedItem)) {
+                        return null;
+                    }
+                    membership.or(itemAncestors.get(((InvTweaksItemTreeItem) storedItem).treeIndex));
+                }
+            }
+            itemMemberships.set(index, membership);
+        }
+        return membership;
     }
 
     public int getHighestOrder() {
@@ -319,7 +520,7 @@ public class InvTweaksItemTree implements IItemTree {
 
     @Override
     public void registerOre(String category, String name, String oreName, int order, String path) {
-        for(@Nullable ItemStack i : OreDictionary.getOres(oreName, false)) {
+        for(@Nullable ItemStack i : (gameItems != null) ? gameItems.getOres(oreName) : OreDictionary.getOres(oreName, false)) {
             if(i != null) {
                 // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
                 addItem(category, new InvTweaksItemTreeItem(name, i.getItem().getRegistryName().toString(), i.getItemDamage(), null, order, path));
@@ -327,9 +528,45 @@ public class InvTweaksItemTree implements IItemTree {
                 log.warn(String.format("An OreDictionary entry for %s is null", oreName));
             }
         }
+        addOreInfo(category, name, oreName, order, path);
+    }
+
+    /**
+     * Remembers an ore dictionary entry, so that ores registered later are added to the tree.
+     */
+    void addOreInfo(String category, String name, String oreName, int order, String path) {
+        if(snapshot != null) {
+            snapshot.recordOre(category, name, oreName, order, path);
+        }
         oresRegistered.add(new OreDictInfo(category, name, oreName, order, path));
     }
 
+    /**
+     * Sets the items class and ore rules expand to while the tree file is read, instead of reading the registries.
+     */
+    void setGameItems(@Nullable InvTweaksGameItems gameItems_) {
+        gameItems = gameItems_;
+    }
+
+    /**
+     * Starts recording what is registered in the tree.
+     */
+    void startSnapshot() {
+        snapshot = new InvTweaksItemTreeSnapshot();
+    }
+
+    /**
+     * Stops recording.
+     *
+     * @return What was registered since startSnapshot(), or null if it wasn't called.
+     */
+    @Nullable
+    InvTweaksItemTreeSnapshot takeSnapshot() {
+        @Nullable InvTweaksItemTreeSnapshot recorded = snapshot;
+        snapshot = null;
+        return recorded;
+    }
+
     @SubscribeEvent
     public void oreRegistered(@NotNull OreDictionary.OreRegisterEvent ev) {
         // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
@@ -344,84 +581,203 @@ public class InvTweaksItemTree implements IItemTree {
         });
     }
 
+    /**
+     * Registers items of all classes whose name ends with the given class name. Rules are resolved together once the
+     * tree file has been read, see resolveClassRules().
+     */
     public void registerClass(String category, String name, String className, NBTTagCompound extraData, int order, String path) {
-        if(allGameItems.size() == 0) {
-            populateGameItems();
+        @NotNull ClassRule rule = new ClassRule(category, name, className, extraData, order, path);
+        pendingClassRules.add(rule);
+        pendingItems.add(new PendingItem(category, null, rule));
+    }
+
+    /**
+     * Matches every game item against all class rules at once: each item class hierarchy is walked once, and its
+     * names are looked up in a table of rule suffixes. Pending items are then added in file order.
+     */
+    private void resolveClassRules() {
+        if(pendingClassRules.isEmpty()) {
+            return;
+        }
+
+        // Rules by class name suffix, and the suffix lengths to look up
+        @NotNull Map<String, BitSet> rulesBySuffix = new HashMap<>();
+        @NotNull SortedSet<Integer> suffixLengths = new TreeSet<>();
+        for(int i = 0; i < pendingClassRules.size(); i++) {
+            String className = pendingClassRules.get(i).className;
+            rulesBySuffix.computeIfAbsent(className, k -> new BitSet()).set(i);
+            suffixLengths.add(className.length());
         }
 
-        for(ItemStack stack : allGameItems) {
+        // Only reads what was gathered from the items, this may run on the config loader thread
+        @NotNull List<InvTweaksGameItems.GameItem> allGameItems = ((gameItems != null) ? gameItems : InvTweaksGameItems.gather()).getItems();
+        @NotNull Map<Class<?>, BitSet> rulesByClass = new HashMap<>();
+        for(@NotNull InvTweaksGameItems.GameItem gameItem : allGameItems) {
+            @NotNull ItemStack stack = gameItem.stack;
             Item item = stack.getItem();
-            boolean isClass = InstanceOfClassNameKind(item, className);
-            if(isClass) {
-                boolean doIt = true;
-                if(extraData != null) {
-                    if(doIt && extraData.hasKey("toolclass")) {
-                        String tclass = extraData.getString("toolclass");
-                        //We don't want the set, we want the one we will use during comparisons.
-                        //An empty toolclass will match non-tools.                        
-                        doIt = tclass.equals(InvTweaks.getToolClass(stack, item));
-                    }
-                    if(doIt && extraData.hasKey("armortype") && item instanceof ItemArmor) {
-                        ItemArmor armor = (ItemArmor) item;
-                        String keyArmorType = extraData.getString("armortype");
-                        String itemArmorType = armor.armorType.getName().toLowerCase();
-                        doIt = (keyArmorType.equals(itemArmorType));
-                        armor = null;
-                    }
-                    if(doIt && extraData.hasKey("isshield")) {
-                        doIt = item.isShield(stack, null);
-                    }
-                }
-                //Checks out, add it to the tree:
-                if(doIt) {
-                    int dmg = item.isDamageable() ? InvTweaksConst.DAMAGE_WILDCARD : stack.getItemDamage();
-                    addItem(category, new InvTweaksItemTreeItem(name, item.getRegistryName().toString(), dmg, null, order, path));
+            @NotNull BitSet rules = getMatchingClassRules(item.getClass(), rulesBySuffix, suffixLengths, rulesByClass);
+            for(int i = rules.nextSetBit(0); i >= 0; i = rules.nextSetBit(i + 1)) {
+                @NotNull ClassRule rule = pendingClassRules.get(i);
+                if(rule.accepts(gameItem)) {
+                    int dmg = gameItem.damageable ? InvTweaksConst.DAMAGE_WILDCARD : stack.getItemDamage();
+                    rule.matches.add(new InvTweaksItemTreeItem(rule.name, item.getRegistryName().toString(), dmg, null, rule.order, rule.path));
                 }
             }
         }
-    }
-
-    private void populateGameItems() {
-        for(Map.Entry<ResourceLocation, Item> entry : ForgeRegistries.ITEMS.getEntries()) {
-            //getDataForItemSubtypes(itemDump, entry.getValue(), entry.getKey(), includeToolClass, dumpNBT);
-            Item item = entry.getValue();
-
-            if(item.getHasSubtypes()) {
-                for(CreativeTabs tab : item.getCreativeTabs()) {
-                    if(tab != null) {
-                        NonNullList<ItemStack> stacks = NonNullList.<ItemStack>create();
-                        item.getSubItems(tab, stacks);
 
-                        for(ItemStack stack : stacks) {
-                            allGameItems.add(stack);
-                            // FIXME: Ignore identical duplicate entries from different tabs...
-                            //addData(itemDump, item, rl, true, includeToolClass, dumpNBT, stack);
-                        }
-                    }
+        @NotNull List<PendingItem> items = pendingItems;
+        pendingItems = new ArrayList<>();
+        pendingClassRules.clear();
+        for(@NotNull PendingItem pending : items) {
+            if(pending.rule != null) {
+                for(@NotNull IItemTreeItem match : pending.rule.matches) {
+                    addItem(pending.category, match);
                 }
             } else {
-                allGameItems.add(item.getDefaultInstance());
-                //addData(itemDump, item, rl, false, includeToolClass, dumpNBT, new ItemStack(item, 1, 0));
+                addItem(pending.category, pending.item);
             }
         }
     }
 
-    private boolean InstanceOfClassNameKind(Object o, String className) {
-        Class testClass = o.getClass();
-        while(testClass != null) {
-            if(testClass.getName().toLowerCase().endsWith(className)) { return true; }
-            //The secret sauce:
-            testClass = testClass.getSuperclass();
+    /**
+     * @return The indexes of the class rules matching the given class or one of its superclasses.
+     */
+    @NotNull
+    private static BitSet getMatchingClassRules(@NotNull Class<?> clazz, @NotNull Map<String, BitSet> rulesBySuffix, @NotNull SortedSet<Integer> suffixLengths, @NotNull Map<Class<?>, BitSet> rulesByClass) {
+        BitSet rules = rulesByClass.get(clazz);
+        if(rules == null) {
+            rules = new BitSet();
+            @NotNull String name = clazz.getName().toLowerCase();
+            for(int length : suffixLengths) {
+                if(length > name.length()) {
+                    break;
+                }
+                BitSet suffixRules = rulesBySuffix.get(name.substring(name.length() - length));
+                if(suffixRules != null) {
+                    rules.or(suffixRules);
+                }
+            }
+            Class<?> superClass = clazz.getSuperclass();
+            if(superClass != null) {
+                rules.or(getMatchingClassRules(superClass, rulesBySuffix, suffixLengths, rulesByClass));
+            }
+            rulesByClass.put(clazz, rules);
         }
-        return false;
+        return rules;
     }
 
     public void endFileRead() {
+        resolveClassRules();
+
         //We are done with this, let's release the memory.
-        allGameItems.clear();
+        gameItems = null;
 
         //Remember where the last entry was placed in the tree for the API to leave these unsorted.
         lastTreeOrder = highestOrder;
+
+        compileLookups();
+    }
+
+    /**
+     * Resolves every (ID, damage) pair, keyword and category membership the tree knows about, so that lookups made
+     * while sorting are simple map hits.
+     */
+    private void compileLookups() {
+        resolvedItems.clear();
+        keywordOrders.clear();
+
+        for(@NotNull Map.Entry<String, List<IItemTreeItem>> entry : itemsById.entrySet()) {
+            for(@Nullable IItemTreeItem item : entry.getValue()) {
+                if(item != null && item.getDamage() != InvTweaksConst.DAMAGE_WILDCARD) {
+                    resolveItems(entry.getKey(), item.getDamage());
+                }
+            }
+        }
+
+        for(@NotNull InvTweaksItemTreeItem item : indexedItems) {
+            getMembership(item);
+        }
+
+        if(getRootCategory() != null) {
+            for(String name : itemsByName.keySet()) {
+                getKeywordOrder(name);
+            }
+            for(String name : categories.keySet()) {
+                getKeywordOrder(name);
+            }
+        }
+    }
+
+    private static class ResolvedItems {
+        @NotNull
+        final List<IItemTreeItem> items;
+        final boolean hasExtraData;
+
+        ResolvedItems(@NotNull List<IItemTreeItem> items_, boolean hasExtraData_) {
+            items = items_;
+            hasExtraData = hasExtraData_;
+        }
+    }
+
+    private static class ClassRule {
+        final String category;
+        final String name;
+        final String className;
+        @Nullable
+        final NBTTagCompound extraData;
+        final int order;
+        final String path;
+        @NotNull
+        final List<IItemTreeItem> matches = new ArrayList<>();
+
+        ClassRule(String category_, String name_, String className_, @Nullable NBTTagCompound extraData_, int order_, String path_) {
+            category = category_;
+            name = name_;
+            className = className_;
+            extraData = extraData_;
+            order = order_;
+            path = path_;
+        }
+
+        /**
+         * Checks the extra conditions of the rule, for an item of a matching class.
+         */
+        boolean accepts(@NotNull InvTweaksGameItems.GameItem gameItem) {
+            if(extraData == null) {
+                return true;
+            }
+            Item item = gameItem.stack.getItem();
+            if(extraData.hasKey("toolclass")) {
+                String tclass = extraData.getString("toolclass");
+                //We don't want the set, we want the one we will use during comparisons.
+                //An empty toolclass will match non-tools.
+                if(!tclass.equals(gameItem.toolClass)) {
+                    return false;
+                }
+            }
+            if(extraData.hasKey("armortype") && item instanceof ItemArmor) {
+                String keyArmorType = extraData.getString("armortype");
+                String itemArmorType = ((ItemArmor) item).armorType.getName().toLowerCase();
+                if(!keyArmorType.equals(itemArmorType)) {
+                    return false;
+                }
+            }
+            return !extraData.hasKey("isshield") || gameItem.shield;
+        }
+    }
+
+    private static class PendingItem {
+        final String category;
+        @Nullable
+        final IItemTreeItem item;
+        @Nullable
+        final ClassRule rule;
+
+        PendingItem(String category_, @Nullable IItemTreeItem item_, @Nullable ClassRule rule_) {
+            category = category_;
+            item = item_;
+            rule = rule_;
+        }
     }
 
     private static class OreDictInfo {
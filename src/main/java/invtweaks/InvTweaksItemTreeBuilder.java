@@ -17,7 +17,11 @@ import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class InvTweaksItemTreeBuilder {
 
@@ -30,38 +34,105 @@ public class InvTweaksItemTreeBuilder {
         newDoc = docBuilder.parse(file);
     }
 
-    public static boolean buildNewTree() {
+    private InvTweaksItemTreeBuilder(@NotNull Document doc) throws ParserConfigurationException {
+        docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        newDoc = doc;
+    }
 
-        //If we don't have the folder, then we don't want to rebuild from the parts.
-        if(!InvTweaksConst.INVTWEAKS_TREES_DIR.exists()) { return false; }
+    /**
+     * Lists the tree files to load: the base tree, followed by the partial trees to merge into it. Partial trees are
+     * read from the config folder, where older versions looked for them, then from the trees folder.
+     *
+     * @return The files in merge order, starting with the base tree.
+     */
+    @NotNull
+    public static List<File> getTreeFiles() {
+        @NotNull List<File> files = new ArrayList<>();
 
         //Try to get our root tree.
         File base = new File(InvTweaksConst.INVTWEAKS_TREES_DIR, "minecraft.tree");
         if(!base.exists()) { base = InvTweaksConst.CONFIG_TREE_FILE; }
+        files.add(base);
 
-        //There just isn't any hope left.
-        if(!base.exists()) { return false; }
+        addPartialTrees(files, InvTweaksConst.INVTWEAKS_CONFIG_DIR, base);
+        addPartialTrees(files, InvTweaksConst.INVTWEAKS_TREES_DIR, base);
 
-        try {
-            log.info("Merging tree files.");
-            InvTweaksItemTreeBuilder newTree = new InvTweaksItemTreeBuilder(base);
-
-            File[] treeFiles = InvTweaksConst.INVTWEAKS_CONFIG_DIR.listFiles();
+        return files;
+    }
 
+    private static void addPartialTrees(@NotNull List<File> files, @NotNull File dir, @NotNull File base) {
+        //If we don't have the folder, then there is nothing to merge.
+        File[] treeFiles = dir.listFiles();
+        if(treeFiles != null) {
+            //Sorted so that the merge result doesn't depend on the file system.
+            Arrays.sort(treeFiles);
             for(File tree : treeFiles) {
-                //Make sure it is the type of file we want.
-                if(tree.getName().endsWith(".tree")) {
-                    try {
-                        //don't re-load our base.
-                        if(!tree.equals(base)) {
-                            newTree.add(tree);
-                        }
-                    } catch(Exception e) {
-                        log.error("Unable to process partial Tree: " + tree.getName() + " " + e.getMessage());
-                    }
+                //Make sure it is the type of file we want, and don't re-load our base.
+                if(tree.getName().endsWith(".tree") && !tree.equals(base)) {
+                    files.add(tree);
                 }
             }
+        }
+    }
+
+    /**
+     * Merges tree files in memory. Files are parsed in parallel, then merged in order into the first one.
+     *
+     * @param files The base tree, followed by partial trees. Partial trees that fail to parse are skipped, and if the
+     *              base tree does, the tree file is used alone instead.
+     * @return The merged document.
+     */
+    @NotNull
+    public static Document mergeTrees(@NotNull List<File> files) throws Exception {
+        log.info("Merging tree files.");
+
+        @NotNull List<ForkJoinTask<Document>> parsedTrees = new ArrayList<>(files.size());
+        for(@NotNull File file : files) {
+            // DocumentBuilder isn't thread safe, each file gets its own
+            parsedTrees.add(ForkJoinPool.commonPool().submit(() -> DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file)));
+        }
+
+        @NotNull Document base;
+        try {
+            base = getParsedTree(parsedTrees.get(0));
+        } catch(Exception e) {
+            if(files.get(0).equals(InvTweaksConst.CONFIG_TREE_FILE)) {
+                throw e;
+            }
+            log.error("Fail Building New Tree: " + e.getMessage());
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(InvTweaksConst.CONFIG_TREE_FILE);
+        }
+
+        @NotNull InvTweaksItemTreeBuilder newTree = new InvTweaksItemTreeBuilder(base);
+        for(int i = 1; i < files.size(); i++) {
+            try {
+                newTree.add(getParsedTree(parsedTrees.get(i)));
+            } catch(Exception e) {
+                log.error("Unable to process partial Tree: " + files.get(i).getName() + " " + e.getMessage());
+            }
+        }
 
+        if(InvTweaksConst.DUMP_MERGED_TREE) {
+            newTree.save();
+        }
+        log.info("Merged tree files.");
+        return newTree.newDoc;
+    }
+
+    @NotNull
+    private static Document getParsedTree(@NotNull ForkJoinTask<Document> parsedTree) throws Exception {
+        try {
+            return parsedTree.get();
+        } catch(ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Writes the merged tree, for debugging only: the tree is loaded from memory.
+     */
+    private void save() {
+        try {
             Transformer transformer = TransformerFactory.newInstance().newTransformer();
             transformer.setOutputProperty(OutputKeys.INDENT, "yes");
             transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
@@ -78,15 +149,11 @@ public class InvTweaksItemTreeBuilder {
                 log.info("Saving merged tree in 'trees' folder.");
             }
             Result output = new StreamResult(treeFile);
-            Source input = new DOMSource(newTree.newDoc);
+            Source input = new DOMSource(newDoc);
 
             transformer.transform(input, output);
-            log.info("Merged tree files.");
-            return true;
-
         } catch(Exception e) {
-            log.error("Fail Building New Tree: " + e.getMessage());
-            return false;
+            log.error("Fail Saving Merged Tree: " + e.getMessage());
         }
     }
 
@@ -130,7 +197,10 @@ public class InvTweaksItemTreeBuilder {
     }
 
     public void add(@NotNull File file) throws ParserConfigurationException, SAXException, IOException {
-        Document otherDoc = docBuilder.parse(file);
+        add(docBuilder.parse(file));
+    }
+
+    private void add(@NotNull Document otherDoc) {
         Element newElement = newDoc.getDocumentElement();
         Element otherElement = otherDoc.getDocumentElement();
         combine(newElement, otherElement);
@@ -22,6 +22,10 @@ public class InvTweaksItemTreeItem implements IItemTreeItem {
     private NBTTagCompound extraData;
     private int order;
     private String path;
+    /**
+     * Dense index assigned by the tree this item was registered in, -1 if none.
+     */
+    int treeIndex = -1;
 
     /**
      * @param name_   The item name
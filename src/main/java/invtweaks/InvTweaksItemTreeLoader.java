@@ -7,6 +7,7 @@ import net.minecraft.nbt.NBTTagCompound;
 import net.minecraftforge.common.MinecraftForge;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -14,8 +15,12 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -39,13 +44,17 @@ public class InvTweaksItemTreeLoader extends DefaultHandler {
     public final static String ATTR_TREE_ORDER = "treeOrder";
     private static final List<IItemTreeListener> onLoadListeners = new ArrayList<>();
     private static InvTweaksItemTree tree;
+    /**
+     * The tree in use, that listeners added late are notified of. Only accessed with onLoadListeners held.
+     */
+    @Nullable
+    private static InvTweaksItemTree activeTree = null;
     @Nullable
     private static String treeVersion;
     private static int itemOrder;
     private static int mergeChildren;
     private static LinkedList<String> categoryStack;
     private static LinkedList<Boolean> mergeStack;
-    private static boolean treeLoaded = false;
 
     private static void init() {
         treeVersion = null;
@@ -57,23 +66,81 @@ public class InvTweaksItemTreeLoader extends DefaultHandler {
     }
 
     public synchronized static InvTweaksItemTree load(@NotNull File file) throws Exception {
+        return load(file, null);
+    }
+
+    /**
+     * @param cacheFile Where a snapshot of the loaded tree is kept between sessions, or null to always read the tree
+     *                  file.
+     */
+    public synchronized static InvTweaksItemTree load(@NotNull File file, @Nullable File cacheFile) throws Exception {
+        return load(Collections.singletonList(file), cacheFile);
+    }
+
+    /**
+     * Loads a tree made of several tree files, merged in memory.
+     *
+     * @param files     The base tree, followed by partial trees to merge into it
+     * @param cacheFile Where a snapshot of the loaded tree is kept between sessions, or null to always read the tree
+     *                  files.
+     */
+    public synchronized static InvTweaksItemTree load(@NotNull List<File> files, @Nullable File cacheFile) throws Exception {
+        return load(files, cacheFile, InvTweaksGameItems.gather());
+    }
+
+    /**
+     * Loads a tree, without calling item or mod code, so that it can run on another thread than the client one. Once
+     * the tree is in use, treeActivated() must be called on the client thread.
+     *
+     * @param gameItems The items class and ore rules expand to, gathered on the client thread
+     */
+    synchronized static InvTweaksItemTree load(@NotNull List<File> files, @Nullable File cacheFile, @NotNull InvTweaksGameItems gameItems) throws Exception {
         init();
 
-        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
-        SAXParser parser = parserFactory.newSAXParser();
-        parser.parse(file, new InvTweaksItemTreeLoader());
+        @Nullable String cacheKey = (cacheFile != null) ? InvTweaksItemTreeSnapshot.getKey(files, gameItems) : null;
+        if(cacheKey != null && InvTweaksItemTreeSnapshot.replay(cacheFile, cacheKey, tree)) {
+            tree.endFileRead();
+        } else {
+            // The replay may have left some of the tree built
+            init();
+            tree.setGameItems(gameItems);
+            if(cacheKey != null) {
+                tree.startSnapshot();
+            }
+
+            if(files.size() == 1) {
+                SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+                SAXParser parser = parserFactory.newSAXParser();
+                parser.parse(files.get(0), new InvTweaksItemTreeLoader());
+            } else {
+                // Feeds the merged document to the loader as if it was read from a file
+                @NotNull Document mergedTree = InvTweaksItemTreeBuilder.mergeTrees(files);
+                TransformerFactory.newInstance().newTransformer().transform(new DOMSource(mergedTree), new SAXResult(new InvTweaksItemTreeLoader()));
+            }
+
+            @Nullable InvTweaksItemTreeSnapshot snapshot = tree.takeSnapshot();
+            if(snapshot != null) {
+                snapshot.save(cacheFile, cacheKey);
+            }
+        }
+
+        return tree;
+    }
+
+    /**
+     * Puts a loaded tree in use: it starts following ore dictionary registrations, and listeners are notified of it.
+     * Must be called on the client thread.
+     */
+    static void treeActivated(@NotNull InvTweaksItemTree loadedTree) {
+        MinecraftForge.EVENT_BUS.register(loadedTree);
 
         // Tree loaded event
         synchronized(onLoadListeners) {
-            treeLoaded = true;
+            activeTree = loadedTree;
             for(@NotNull IItemTreeListener onLoadListener : onLoadListeners) {
-                onLoadListener.onTreeLoaded(tree);
+                onLoadListener.onTreeLoaded(loadedTree);
             }
         }
-
-        MinecraftForge.EVENT_BUS.register(tree);
-
-        return tree;
     }
 
     public synchronized static boolean isValidVersion(@NotNull File file) throws Exception {
@@ -92,16 +159,21 @@ public class InvTweaksItemTreeLoader extends DefaultHandler {
         }
     }
 
-    public synchronized static void addOnLoadListener(@NotNull IItemTreeListener listener) {
-        onLoadListeners.add(listener);
-        if(treeLoaded) {
-            // Late event triggering
-            listener.onTreeLoaded(tree);
+    public static void addOnLoadListener(@NotNull IItemTreeListener listener) {
+        // Not locking the loader, that may be busy loading a tree on the config loader thread
+        synchronized(onLoadListeners) {
+            onLoadListeners.add(listener);
+            if(activeTree != null) {
+                // Late event triggering
+                listener.onTreeLoaded(activeTree);
+            }
         }
     }
 
-    public synchronized static boolean removeOnLoadListener(IItemTreeListener listener) {
-        return onLoadListeners.remove(listener);
+    public static boolean removeOnLoadListener(IItemTreeListener listener) {
+        synchronized(onLoadListeners) {
+            return onLoadListeners.remove(listener);
+        }
     }
 
     private int getNextItemOrder(boolean lastOrder) {
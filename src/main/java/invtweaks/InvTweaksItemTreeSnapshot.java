@@ -0,0 +1,271 @@
+package invtweaks;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sequence of categories, items and ore dictionary entries registered while reading a tree file, once ore
+ * dictionary and class rules have been expanded. Replaying it builds the same tree without parsing XML nor going
+ * through the item registry.
+ * <p>
+ * A snapshot is only valid for the tree files and the item registry it was recorded with, see getKey().
+ */
+class InvTweaksItemTreeSnapshot {
+    private static final Logger log = InvTweaks.log;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte OP_ROOT = 0;
+    private static final byte OP_CATEGORY = 1;
+    private static final byte OP_ITEM = 2;
+    private static final byte OP_ORE = 3;
+
+    @NotNull
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(65536);
+    @NotNull
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    /**
+     * Paths and names repeat a lot, each string is written once then referred to by index.
+     */
+    @NotNull
+    private final Object2IntMap<String> strings = new Object2IntOpenHashMap<>();
+    private int operations = 0;
+
+    InvTweaksItemTreeSnapshot() {
+        strings.defaultReturnValue(-1);
+    }
+
+    /**
+     * Computes the key a snapshot of the given tree files is valid for: the content of the tree files, the mod version
+     * and the items with their sub-items and the ore dictionary entries, which class and ore rules expand to.
+     *
+     * @param treeFiles The tree files, in the order they are merged
+     * @param gameItems The items the tree is loaded against
+     * @return The key, or null if a tree file can't be read.
+     */
+    @Nullable
+    static String getKey(@NotNull List<File> treeFiles, @NotNull InvTweaksGameItems gameItems) {
+        try {
+            @NotNull MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            @NotNull ByteArrayOutputStream registryBytes = new ByteArrayOutputStream();
+            @NotNull DataOutputStream registry = new DataOutputStream(registryBytes);
+            @NotNull List<File> keyFiles = new ArrayList<>(treeFiles);
+            if(treeFiles.size() > 1 && !treeFiles.get(0).equals(InvTweaksConst.CONFIG_TREE_FILE) && InvTweaksConst.CONFIG_TREE_FILE.isFile()) {
+                // Loaded instead if the base tree fails to parse, see InvTweaksItemTreeBuilder.mergeTrees()
+                keyFiles.add(InvTweaksConst.CONFIG_TREE_FILE);
+            }
+            for(@NotNull File treeFile : keyFiles) {
+                byte[] treeBytes = Files.readAllBytes(treeFile.toPath());
+                // The length keeps the boundary between files part of the key
+                registry.writeInt(treeBytes.length);
+                registry.write(treeBytes);
+            }
+
+            registry.writeInt(FORMAT_VERSION);
+            registry.writeUTF(InvTweaksConst.MOD_VERSION);
+            // Sub-items can change with a mod's update or config while the registry stays the same
+            for(@NotNull InvTweaksGameItems.GameItem gameItem : gameItems.getItems()) {
+                @NotNull ItemStack stack = gameItem.stack;
+                registry.writeUTF(String.valueOf(stack.getItem().getRegistryName()));
+                registry.writeUTF(stack.getItem().getClass().getName());
+                registry.writeInt(stack.getItemDamage());
+            }
+            for(@NotNull Map.Entry<String, List<ItemStack>> ore : gameItems.getOres().entrySet()) {
+                registry.writeUTF(ore.getKey());
+                for(@Nullable ItemStack stack : ore.getValue()) {
+                    if(stack != null && !stack.isEmpty()) {
+                        registry.writeUTF(String.valueOf(stack.getItem().getRegistryName()));
+                        registry.writeInt(stack.getItemDamage());
+                    }
+                }
+            }
+            registry.flush();
+            digest.update(registryBytes.toByteArray());
+
+            @NotNull StringBuilder key = new StringBuilder();
+            for(byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch(@NotNull IOException | NoSuchAlgorithmException e) {
+            log.warn("Unable to compute item tree cache key: " + e.getMessage());
+            return null;
+        }
+    }
+
+    void recordRoot(String name) {
+        write(OP_ROOT, () -> writeString(name));
+    }
+
+    void recordCategory(String parent, String name) {
+        write(OP_CATEGORY, () -> {
+            writeString(parent);
+            writeString(name);
+        });
+    }
+
+    void recordItem(String parent, @NotNull InvTweaksItemTreeItem item) {
+        write(OP_ITEM, () -> {
+            writeString(parent);
+            writeString(item.getName());
+            writeString(item.getId());
+            out.writeInt(item.getDamage());
+            out.writeInt(item.getOrder());
+            writeString(item.getPath());
+            out.writeBoolean(item.getExtraData() != null);
+            if(item.getExtraData() != null) {
+                CompressedStreamTools.write(item.getExtraData(), out);
+            }
+        });
+    }
+
+    void recordOre(String category, String name, String oreName, int order, String path) {
+        write(OP_ORE, () -> {
+            writeString(category);
+            writeString(name);
+            writeString(oreName);
+            out.writeInt(order);
+            writeString(path);
+        });
+    }
+
+    private void write(byte op, @NotNull IOAction action) {
+        try {
+            out.writeByte(op);
+            action.run();
+            operations++;
+        } catch(IOException e) {
+            // Can't happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeString(@Nullable String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int index = strings.getInt(value);
+        if(index != -1) {
+            out.writeInt(index);
+        } else {
+            // A new string is written as the next index, followed by its content
+            out.writeInt(strings.size());
+            out.writeUTF(value);
+            strings.put(value, strings.size());
+        }
+    }
+
+    /**
+     * Writes the snapshot to a file, replacing any previous one.
+     */
+    void save(@NotNull File file, @NotNull String key) {
+        try {
+            out.flush();
+            File parent = file.getAbsoluteFile().getParentFile();
+            if(parent != null && !parent.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                parent.mkdirs();
+            }
+            try(@NotNull DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                fileOut.writeInt(FORMAT_VERSION);
+                fileOut.writeUTF(key);
+                fileOut.writeInt(operations);
+                bytes.writeTo(fileOut);
+            }
+        } catch(IOException e) {
+            log.warn("Unable to save item tree cache: " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Rebuilds a tree from a snapshot file.
+     *
+     * @param tree An empty tree, that may be left partially built if false is returned
+     * @return false if the file is missing, invalid, or doesn't match the key.
+     */
+    static boolean replay(@NotNull File file, @NotNull String key, @NotNull InvTweaksItemTree tree) {
+        if(!file.isFile()) {
+            return false;
+        }
+
+        try(@NotNull DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if(in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return false;
+            }
+
+            @NotNull List<String> strings = new ArrayList<>();
+            for(int i = in.readInt(); i > 0; i--) {
+                byte op = in.readByte();
+                switch(op) {
+                    case OP_ROOT:
+                        tree.setRootCategory(new InvTweaksItemTreeCategory(readString(in, strings)));
+                        break;
+                    case OP_CATEGORY: {
+                        String parent = readString(in, strings);
+                        tree.addCategory(parent, new InvTweaksItemTreeCategory(readString(in, strings)));
+                        break;
+                    }
+                    case OP_ITEM: {
+                        String parent = readString(in, strings);
+                        String name = readString(in, strings);
+                        String id = readString(in, strings);
+                        int damage = in.readInt();
+                        int order = in.readInt();
+                        String path = readString(in, strings);
+                        @Nullable NBTTagCompound extraData = in.readBoolean() ? CompressedStreamTools.read(in) : null;
+                        tree.addItem(parent, new InvTweaksItemTreeItem(name, id, damage, extraData, order, path));
+                        break;
+                    }
+                    case OP_ORE: {
+                        String category = readString(in, strings);
+                        String name = readString(in, strings);
+                        String oreName = readString(in, strings);
+                        int order = in.readInt();
+                        tree.addOreInfo(category, name, oreName, order, readString(in, strings));
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown operation " + op);
+                }
+            }
+            return true;
+        } catch(IOException | RuntimeException e) {
+            log.warn("Invalid item tree cache, reloading the tree: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Nullable
+    private static String readString(@NotNull DataInputStream in, @NotNull List<String> strings) throws IOException {
+        int index = in.readInt();
+        if(index == -1) {
+            return null;
+        } else if(index == strings.size()) {
+            strings.add(in.readUTF());
+        } else if(index < 0 || index > strings.size()) {
+            throw new IOException("Invalid string index " + index);
+        }
+        return strings.get(index);
+    }
+
+    @FunctionalInterface
+    private interface IOAction {
+        void run() throws IOException;
+    }
+}
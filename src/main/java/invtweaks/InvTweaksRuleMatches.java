@@ -0,0 +1,96 @@
+package invtweaks;
+
+import invtweaks.api.IItemTreeItem;
+import invtweaks.container.ContainerSectionLayout;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Which sorting rules match the stacks of a section being sorted. Each distinct item (id, damage and NBT data, as the
+ * item tree tells them apart) is looked up in the tree once, and gets the set of rules matching it by index in the
+ * rule list. Stacks keep their item when moved, so sorting then only tests bits instead of querying the tree again
+ * after every move.
+ */
+class InvTweaksRuleMatches {
+    @NotNull
+    private final InvTweaksItemTree tree;
+    @NotNull
+    private final List<InvTweaksConfigSortingRule> rules;
+    @NotNull
+    private final ContainerSectionLayout layout;
+    @NotNull
+    private final Map<InvTweaksStackKey, Entry> entries = new HashMap<>();
+    /**
+     * Entry of the stack in each slot of the layout, null if the slot is empty.
+     */
+    @NotNull
+    private final Entry[] slotEntries;
+
+    InvTweaksRuleMatches(@NotNull InvTweaksItemTree tree_, @NotNull List<InvTweaksConfigSortingRule> rules_, @NotNull ContainerSectionLayout layout_) {
+        tree = tree_;
+        rules = rules_;
+        layout = layout_;
+        slotEntries = new Entry[layout.getSize()];
+        for(int i = 0; i < slotEntries.length; i++) {
+            refresh(i);
+        }
+    }
+
+    /**
+     * Reads the stack of a slot again, after it was moved in the layout.
+     */
+    void refresh(int slot) {
+        @NotNull ItemStack stack = layout.getItemStack(slot);
+        slotEntries[slot] = stack.isEmpty() ? null : getEntry(stack);
+    }
+
+    /**
+     * @param rule Index of the rule in the rule list
+     * @return true if the stack in the slot matches the rule's keyword.
+     */
+    boolean matches(int slot, int rule) {
+        @Nullable Entry entry = slotEntries[slot];
+        return entry != null && entry.rules.get(rule);
+    }
+
+    /**
+     * @return The order of the stack's item in the tree, or Integer.MAX_VALUE if it isn't in the tree.
+     */
+    int getOrder(@NotNull ItemStack stack) {
+        return getEntry(stack).order;
+    }
+
+    @NotNull
+    private Entry getEntry(@NotNull ItemStack stack) {
+        // What the item tree tells items apart by
+        @NotNull InvTweaksStackKey lookup = new InvTweaksStackKey(stack.getItem(), stack.getItemDamage(), stack.getTagCompound());
+        @Nullable Entry entry = entries.get(lookup);
+        if(entry == null) {
+            // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
+            @NotNull List<IItemTreeItem> items = tree.getMatchingItems(stack.getItem().getRegistryName().toString(), stack.getItemDamage(), stack.getTagCompound());
+            @NotNull BitSet matching = new BitSet(rules.size());
+            for(int r = 0; r < rules.size(); r++) {
+                if(tree.matches(items, rules.get(r).getKeyword())) {
+                    matching.set(r);
+                }
+            }
+            entry = new Entry(matching, (items.size() > 0) ? items.get(0).getOrder() : Integer.MAX_VALUE);
+            entries.put(lookup.copy(), entry);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        @NotNull
+        private final BitSet rules;
+        private final int order;
+
+        private Entry(@NotNull BitSet rules_, int order_) {
+            rules = rules_;
+            order = order_;
+        }
+    }
+}
@@ -5,7 +5,6 @@ import org.lwjgl.input.Keyboard;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author Jimeo Wan
@@ -29,15 +28,15 @@ public class InvTweaksShortcutMapping {
         }
     }
 
-    public boolean isTriggered(@NotNull Map<Integer, Boolean> pressedKeys) {
+    public boolean isTriggered(@NotNull InvTweaksInputState input) {
         for(Integer keyToHold : keysToHold) {
             if(keyToHold != Keyboard.KEY_LCONTROL) {
-                if(!pressedKeys.get(keyToHold)) {
+                if(!input.isKeyDown(keyToHold)) {
                     return false;
                 }
             }
             // AltGr also activates LCtrl, make sure the real LCtrl has been pressed
-            else if(!pressedKeys.get(keyToHold) || Keyboard.isKeyDown(Keyboard.KEY_RMENU)) {
+            else if(!input.isKeyDown(keyToHold) || input.isKeyDown(Keyboard.KEY_RMENU)) {
                 return false;
             }
         }
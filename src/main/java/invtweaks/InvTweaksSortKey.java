@@ -0,0 +1,147 @@
+package invtweaks;
+
+import com.google.common.collect.Multimap;
+import net.minecraft.enchantment.Enchantment;
+import net.minecraft.enchantment.EnchantmentHelper;
+import net.minecraft.entity.SharedMonsterAttributes;
+import net.minecraft.entity.ai.attributes.AttributeModifier;
+import net.minecraft.inventory.EntityEquipmentSlot;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemArmor;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Everything InvTweaks.compareItems() needs to know about a stack, except its size. Computed once per distinct
+ * item, damage and NBT, and kept in a bounded cache.
+ */
+public class InvTweaksSortKey {
+    final int order;
+
+    final String registryName;
+    final int itemDamage;
+    final int maxDamage;
+    final boolean damageable;
+
+    final String toolClass;
+    final boolean isTool;
+    final int harvestLevel;
+
+    final boolean hasAttackDamage;
+    final double attackDamage;
+    final boolean hasAttackSpeed;
+    final double attackSpeed;
+
+    final boolean isArmor;
+    final int armorType;
+    final int damageReduceAmount;
+    final float toughness;
+
+    final boolean hasDisplayName;
+    @NotNull
+    final String displayName;
+
+    final int enchantmentCount;
+    final int enchantmentMaxId;
+    final int enchantmentMaxLevel;
+
+    private InvTweaksSortKey(@NotNull ItemStack stack, int order_) {
+        Item item = stack.getItem();
+        order = order_;
+
+        // TODO: It looks like Mojang changed the internal name type to ResourceLocation. Evaluate how much of a pain that will be.
+        registryName = item.getRegistryName().toString();
+        itemDamage = stack.getItemDamage();
+        maxDamage = stack.getMaxDamage() <= 0 ? Integer.MAX_VALUE : stack.getMaxDamage();
+        damageable = stack.isItemStackDamageable();
+
+        toolClass = InvTweaks.getToolClass(stack, item);
+        isTool = !toolClass.isEmpty();
+        harvestLevel = isTool ? item.getHarvestLevel(stack, toolClass, null, null) : -1;
+
+        Multimap<String, AttributeModifier> modifiers = stack.getAttributeModifiers(EntityEquipmentSlot.MAINHAND);
+        @Nullable AttributeModifier damageModifier = getFirstModifier(modifiers, SharedMonsterAttributes.ATTACK_DAMAGE.getName());
+        @Nullable AttributeModifier speedModifier = getFirstModifier(modifiers, SharedMonsterAttributes.ATTACK_SPEED.getName());
+        hasAttackDamage = damageModifier != null;
+        attackDamage = hasAttackDamage ? damageModifier.getAmount() : 0;
+        hasAttackSpeed = speedModifier != null;
+        attackSpeed = hasAttackSpeed ? speedModifier.getAmount() : 0;
+
+        isArmor = item instanceof ItemArmor;
+        if(isArmor) {
+            ItemArmor armor = (ItemArmor) item;
+            armorType = armor.armorType.ordinal();
+            damageReduceAmount = armor.damageReduceAmount;
+            toughness = armor.toughness;
+        } else {
+            armorType = -1;
+            damageReduceAmount = 0;
+            toughness = 0;
+        }
+
+        hasDisplayName = stack.hasDisplayName();
+        displayName = stack.getDisplayName();
+
+        // TODO: This is really arbitrary but there's not really a good way to do this generically.
+        @NotNull Map<Enchantment, Integer> enchantments = EnchantmentHelper.getEnchantments(stack);
+        int maxId = 0, maxLevel = 0;
+        for(@NotNull Map.Entry<Enchantment, Integer> ench : enchantments.entrySet()) {
+            int enchId = Enchantment.getEnchantmentID(ench.getKey());
+            if(ench.getValue() > maxLevel) {
+                maxId = enchId;
+                maxLevel = ench.getValue();
+            } else if(ench.getValue() == maxLevel && enchId > maxId) {
+                maxId = enchId;
+            }
+        }
+        enchantmentCount = enchantments.size();
+        enchantmentMaxId = maxId;
+        enchantmentMaxLevel = maxLevel;
+    }
+
+    @Nullable
+    private static AttributeModifier getFirstModifier(@NotNull Multimap<String, AttributeModifier> modifiers, String name) {
+        Collection<AttributeModifier> matching = modifiers.get(name);
+        return matching.isEmpty() ? null : matching.iterator().next();
+    }
+
+    /**
+     * Least recently used cache of sort keys, keyed by item, damage and NBT.
+     */
+    static class Cache {
+        private static final int MAX_SIZE = 32768;
+
+        @NotNull
+        private final Map<InvTweaksStackKey, InvTweaksSortKey> keys = new LinkedHashMap<InvTweaksStackKey, InvTweaksSortKey>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InvTweaksStackKey, InvTweaksSortKey> eldest) {
+                return size() > MAX_SIZE;
+            }
+        };
+
+        /**
+         * @param order The tree order of the stack, only computed on a cache miss.
+         */
+        @NotNull
+        InvTweaksSortKey get(@NotNull ItemStack stack, @NotNull ToIntFunction<ItemStack> order) {
+            @NotNull InvTweaksStackKey lookup = new InvTweaksStackKey(stack.getItem(), stack.getItemDamage(), stack.getTagCompound());
+            InvTweaksSortKey key = keys.get(lookup);
+            if(key == null) {
+                key = new InvTweaksSortKey(stack, order.applyAsInt(stack));
+                // Stacks can be modified later on, so keep our own copy of the NBT
+                keys.put(lookup.copy(), key);
+            }
+            return key;
+        }
+
+        void clear() {
+            keys.clear();
+        }
+    }
+}
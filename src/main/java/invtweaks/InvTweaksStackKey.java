@@ -0,0 +1,53 @@
+package invtweaks;
+
+import net.minecraft.item.Item;
+import net.minecraft.nbt.NBTTagCompound;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Identifies stacks by item, damage and NBT data, to cache what is computed once per distinct item. Lookups can use
+ * the NBT data of a stack as is, keys put in a map must be a copy(), as the key must not change while in a map.
+ */
+public class InvTweaksStackKey {
+    @NotNull
+    private final Item item;
+    private final int damage;
+    @Nullable
+    private final NBTTagCompound tag;
+    private final int hash;
+
+    public InvTweaksStackKey(@NotNull Item item_, int damage_, @Nullable NBTTagCompound tag_) {
+        item = item_;
+        damage = damage_;
+        tag = tag_;
+        hash = (System.identityHashCode(item) * 31 + damage) * 31 + Objects.hashCode(tag);
+    }
+
+    /**
+     * @return A key that stays the same when the NBT data of the stack it was made from changes.
+     */
+    @NotNull
+    public InvTweaksStackKey copy() {
+        return (tag != null) ? new InvTweaksStackKey(item, damage, tag.copy()) : this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof InvTweaksStackKey)) {
+            return false;
+        }
+        @NotNull InvTweaksStackKey other = (InvTweaksStackKey) o;
+        return item == other.item && damage == other.damage && hash == other.hash && Objects.equals(tag, other.tag);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
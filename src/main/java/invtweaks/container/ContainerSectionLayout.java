@@ -0,0 +1,302 @@
+package invtweaks.container;
+
+import invtweaks.InvTweaks;
+import invtweaks.InvTweaksObfuscation;
+import invtweaks.forge.InvTweaksMod;
+import invtweaks.network.packets.ITPacketSortLayout;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.inventory.Container;
+import net.minecraft.inventory.Slot;
+import net.minecraft.item.ItemStack;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An in-memory copy of a container section, on which a whole sort can be worked out without clicking anything. Moves
+ * follow the same rules as IContainerManager.move(), and the resulting layout is then applied to the real section in
+ * one go.
+ */
+public class ContainerSectionLayout {
+    private static final Logger log = InvTweaks.log;
+
+    @NotNull
+    private final ContainerSectionManager section;
+    private final int size;
+    @NotNull
+    private final ItemStack[] stacks;
+    /**
+     * Slot each stack was in when the snapshot was taken, -1 for empty slots.
+     */
+    @NotNull
+    private final int[] origins;
+    /**
+     * Merges between stacks, in the order they were planned, as (source origin, destination origin) pairs.
+     */
+    @NotNull
+    private final IntList mergeSources = new IntArrayList();
+    @NotNull
+    private final IntList mergeDestinations = new IntArrayList();
+
+    public ContainerSectionLayout(@NotNull ContainerSectionManager section_) {
+        section = section_;
+        size = section.getSize();
+        stacks = new ItemStack[size];
+        origins = new int[size];
+        for(int i = 0; i < size; i++) {
+            @NotNull ItemStack stack = section.getItemStack(i);
+            stacks[i] = stack.isEmpty() ? ItemStack.EMPTY : stack.copy();
+            origins[i] = stack.isEmpty() ? -1 : i;
+        }
+    }
+
+    /**
+     * @return true if clicking with one stack on the other would merge them (or do nothing) instead of swapping them.
+     */
+    static boolean mergesOnClick(@NotNull ItemStack stack1, @NotNull ItemStack stack2) {
+        return !stack1.isEmpty() && !stack2.isEmpty() && stack1.getItem() == stack2.getItem() && stack1.getMetadata() == stack2.getMetadata() && ItemStack.areItemStackTagsEqual(stack1, stack2);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The planned stack. Must not be modified.
+     */
+    @NotNull
+    public ItemStack getItemStack(int index) {
+        return stacks[index];
+    }
+
+    /**
+     * Plans a move from source to destination, with the same outcome as IContainerManager.move(): the stack is moved
+     * to an empty slot, merged as much as possible into a stack of the same item, or swapped with a different item.
+     *
+     * @return false if the source slot is empty or if a slot would not accept its new stack.
+     */
+    public boolean move(int srcIndex, int destIndex) {
+        @NotNull ItemStack src = stacks[srcIndex], dest = stacks[destIndex];
+        if(src.isEmpty()) {
+            return false;
+        } else if(srcIndex == destIndex) {
+            return true;
+        }
+
+        @Nullable Slot destSlot = section.getSlot(destIndex);
+        if(destSlot != null && !destSlot.isItemValid(src)) {
+            return false;
+        }
+
+        if(dest.isEmpty()) {
+            swap(srcIndex, destIndex);
+        } else if(mergesOnClick(src, dest)) {
+            int limit = Math.min(src.getMaxStackSize(), (destSlot != null) ? destSlot.getItemStackLimit(src) : src.getMaxStackSize());
+            int amount = Math.min(src.getCount(), limit - dest.getCount());
+            if(amount > 0) {
+                mergeSources.add(origins[srcIndex]);
+                mergeDestinations.add(origins[destIndex]);
+                dest.grow(amount);
+                src.shrink(amount);
+                if(src.isEmpty()) {
+                    stacks[srcIndex] = ItemStack.EMPTY;
+                    origins[srcIndex] = -1;
+                }
+            }
+        } else {
+            @Nullable Slot srcSlot = section.getSlot(srcIndex);
+            if(srcSlot != null && !srcSlot.isItemValid(dest)) {
+                return false;
+            }
+            swap(srcIndex, destIndex);
+        }
+        return true;
+    }
+
+    private void swap(int i, int j) {
+        @NotNull ItemStack stack = stacks[i];
+        stacks[i] = stacks[j];
+        stacks[j] = stack;
+        int origin = origins[i];
+        origins[i] = origins[j];
+        origins[j] = origin;
+    }
+
+    /**
+     * Applies the planned layout to the real section: merges first, while every stack is still in its original slot,
+     * then the remaining stacks are permuted to their final slot (see SlotPermutation). When the server supports it, it
+     * is sent the whole layout instead, and moves the stacks itself.
+     *
+     * @return false if the real section could not be brought to the planned layout.
+     */
+    public boolean apply() {
+        // Where each original stack goes, once merges are done
+        @NotNull int[] destinations = new int[size];
+        for(int i = 0; i < size; i++) {
+            destinations[i] = -1;
+        }
+        for(int j = 0; j < size; j++) {
+            if(origins[j] != -1) {
+                destinations[origins[j]] = j;
+            }
+        }
+
+        @Nullable ITPacketSortLayout packet = getPacket(destinations);
+        if(packet != null && InvTweaksMod.proxy.sortLayout(packet)) {
+            return verify();
+        }
+
+        // Don't leave the section half sorted
+        if(needsEmptySlot(destinations) && !section.canSwapThroughEmptySlot()) {
+            log.warn("No empty slot to swap stacks of the same item through, the sorting layout can't be applied.");
+            return false;
+        }
+
+        // Replaying merges in order on the original slots gives the same amounts as planned
+        for(int k = 0; k < mergeSources.size(); k++) {
+            if(!section.move(mergeSources.getInt(k), mergeDestinations.getInt(k))) {
+                log.warn("Failed to merge stacks while applying the sorting layout.");
+                return false;
+            }
+        }
+
+        // Stacks are still in their original slots
+        @NotNull ItemStack[] current = new ItemStack[size];
+        for(int i = 0; i < size; i++) {
+            current[i] = section.getItemStack(i);
+        }
+
+        @Nullable IntList clicks = section.getHeldStack().isEmpty() ? SlotPermutation.getClicks(current, destinations) : null;
+        if(clicks != null) {
+            for(int k = 0; k < clicks.size(); k++) {
+                section.leftClick(clicks.getInt(k));
+            }
+        } else if(!applyBySwapping()) {
+            return false;
+        }
+        return verify();
+    }
+
+    private boolean verify() {
+        for(int i = 0; i < size; i++) {
+            if(!ItemStack.areItemStacksEqual(section.getItemStack(i), stacks[i])) {
+                log.warn("The sorted section does not match the planned layout.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The layout as understood by the server, or null if the section isn't part of the player's open
+     * container, is only simulated, or has slots the server won't write to directly.
+     */
+    @Nullable
+    private ITPacketSortLayout getPacket(@NotNull int[] destinations) {
+        Container container = section.getContainer();
+        if(section.isMirrored() || container == null || container != InvTweaks.getInstance().getThePlayer().openContainer) {
+            return null;
+        }
+        @NotNull int[] slotNumbers = new int[size];
+        for(int i = 0; i < size; i++) {
+            @Nullable Slot slot = section.getSlot(i);
+            if(slot == null || !ITPacketSortLayout.isStorageSlot(slot)) {
+                return null;
+            }
+            slotNumbers[i] = InvTweaksObfuscation.getSlotNumber(slot);
+        }
+        return new ITPacketSortLayout(container.windowId, slotNumbers, mergeSources, mergeDestinations, destinations);
+    }
+
+    /**
+     * Runs through applyBySwapping() without clicking, on the stacks as they will be once merges are done.
+     *
+     * @return true if two stacks of the same item with different sizes will have to be swapped, which needs an empty
+     * slot.
+     */
+    private boolean needsEmptySlot(@NotNull int[] destinations) {
+        // Original stacks are identified by their original slot, and end up as planned in their final slot
+        @NotNull int[] current = new int[size];
+        @NotNull int[] positions = new int[size];
+        for(int i = 0; i < size; i++) {
+            current[i] = (destinations[i] == -1) ? -1 : i;
+            positions[i] = current[i];
+        }
+
+        for(int j = 0; j < size; j++) {
+            int wanted = origins[j];
+            if(wanted == -1 || current[j] == wanted) {
+                continue;
+            }
+
+            int from = positions[wanted];
+            int displaced = current[j];
+            if(displaced != -1) {
+                @NotNull ItemStack fromStack = stacks[destinations[wanted]], toStack = stacks[destinations[displaced]];
+                if(mergesOnClick(fromStack, toStack) && fromStack.getCount() != toStack.getCount()) {
+                    return true;
+                }
+            }
+
+            current[j] = wanted;
+            positions[wanted] = j;
+            current[from] = displaced;
+            if(displaced != -1) {
+                positions[displaced] = from;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves each stack to its final slot with IContainerManager.move(), one swap at a time.
+     */
+    private boolean applyBySwapping() {
+        // Which original stack is in which real slot, and the other way round
+        @NotNull int[] current = new int[size];
+        @NotNull int[] positions = new int[size];
+        for(int i = 0; i < size; i++) {
+            current[i] = section.getItemStack(i).isEmpty() ? -1 : i;
+            positions[i] = current[i];
+        }
+
+        for(int j = 0; j < size; j++) {
+            int wanted = origins[j];
+            if(wanted == -1 || current[j] == wanted) {
+                continue;
+            }
+
+            int from = positions[wanted];
+            if(from == -1 || !moveToSlot(from, j)) {
+                log.warn("Failed to move a stack while applying the sorting layout.");
+                return false;
+            }
+
+            int displaced = current[j];
+            current[j] = wanted;
+            positions[wanted] = j;
+            current[from] = displaced;
+            if(displaced != -1) {
+                positions[displaced] = from;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the real stack of slot i in slot j, and the stack of slot j (if any) in slot i.
+     */
+    private boolean moveToSlot(int i, int j) {
+        @NotNull ItemStack from = section.getItemStack(i), to = section.getItemStack(j);
+        if(mergesOnClick(from, to)) {
+            // Same item: clicking would merge them, so swap through an empty slot unless they're interchangeable
+            if(from.getCount() == to.getCount()) {
+                return true;
+            }
+            return section.swapThroughEmptySlot(i, j);
+        } else {
+            return section.move(i, j);
+        }
+    }
+}
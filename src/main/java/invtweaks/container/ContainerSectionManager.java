@@ -1,7 +1,9 @@
 package invtweaks.container;
 
 import invtweaks.InvTweaks;
+import invtweaks.InvTweaksObfuscation;
 import invtweaks.api.container.ContainerSection;
+import it.unimi.dsi.fastutil.ints.IntList;
 import net.minecraft.inventory.Container;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
@@ -53,6 +55,10 @@ public class ContainerSectionManager {
         containerMgr.click(section, index, rightClick);
     }
 
+    public boolean spread(@NotNull IntList indexes) {
+        return containerMgr.spread(section, indexes);
+    }
+
     public List<Slot> getSlots() {
         return containerMgr.getSlots(section);
     }
@@ -75,6 +81,15 @@ public class ContainerSectionManager {
         return containerMgr.getItemStack(section, index);
     }
 
+    @NotNull
+    public ItemStack getHeldStack() {
+        return containerMgr.getHeldStack();
+    }
+
+    public boolean isMirrored() {
+        return containerMgr.isMirrored();
+    }
+
     public Container getContainer() {
         return containerMgr.getContainer();
     }
@@ -82,4 +97,44 @@ public class ContainerSectionManager {
     public void applyChanges() {
         containerMgr.applyChanges();
     }
+
+    /**
+     * Swaps two stacks of the section through an empty slot, as clicking would merge stacks of the same item. An empty
+     * slot of the section is used if there is one, otherwise an empty plain slot of another section, such as the
+     * player's inventory when sorting a full chest.
+     *
+     * @return false if there is no empty slot to use, or a move failed.
+     */
+    public boolean swapThroughEmptySlot(int i, int j) {
+        @Nullable ContainerSection emptySection = getEmptySlotSection();
+        if(emptySection == null) {
+            return false;
+        }
+        int emptyIndex = containerMgr.getFirstEmptyIndex(emptySection);
+        return containerMgr.move(section, j, emptySection, emptyIndex) && move(i, j) && containerMgr.move(emptySection, emptyIndex, section, i);
+    }
+
+    /**
+     * @return true if swapThroughEmptySlot() has an empty slot to use.
+     */
+    public boolean canSwapThroughEmptySlot() {
+        return getEmptySlotSection() != null;
+    }
+
+    @Nullable
+    private ContainerSection getEmptySlotSection() {
+        if(getFirstEmptyIndex() != -1) {
+            return section;
+        }
+        for(@NotNull ContainerSection other : ContainerSection.values()) {
+            if(other != section && containerMgr.hasSection(other)) {
+                int emptyIndex = containerMgr.getFirstEmptyIndex(other);
+                // Only standard slots, that any stack can be put in and taken back from
+                if(emptyIndex != -1 && InvTweaksObfuscation.isBasicSlot(containerMgr.getSlot(other, emptyIndex))) {
+                    return other;
+                }
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,227 @@
+package invtweaks.container;
+
+import invtweaks.InvTweaksObfuscation;
+import invtweaks.api.container.ContainerSection;
+import net.minecraft.inventory.Container;
+import net.minecraft.inventory.Slot;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The sections of a container, along with lookup tables from slot numbers to sections and indexes. Computing them
+ * means calling the slot map injected into the container class and going through every slot, so they are kept for as
+ * long as the container lives, and rebuilt if slots are added to it.
+ * <p>
+ * Containers mapped directly by a VanillaSlotMaps builder that only depends on the slot count get the same layout
+ * every time they are opened: it is kept per container class as a template, and new instances are mapped by slicing
+ * their slots.
+ */
+public class ContainerSlotMap {
+    private static final Map<Container, ContainerSlotMap> cache = new WeakHashMap<>();
+    private static final Map<Class<?>, Layout> templates = new HashMap<>();
+
+    @NotNull
+    private final Map<ContainerSection, List<Slot>> slotRefs;
+    @NotNull
+    private final Layout layout;
+
+    private ContainerSlotMap(@NotNull Container container) {
+        @Nullable Map<ContainerSection, List<Slot>> refs = InvTweaksObfuscation.getContainerSlotMap(container);
+        slotRefs = (refs != null) ? refs : new HashMap<>();
+        layout = new Layout(container.inventorySlots, slotRefs);
+    }
+
+    private ContainerSlotMap(@NotNull Container container, @NotNull Layout template) {
+        slotRefs = template.slice(container.inventorySlots);
+        layout = template;
+    }
+
+    /**
+     * @return The slot map of the container, computed on first use and kept until slots are added to it.
+     */
+    @NotNull
+    public static ContainerSlotMap get(@NotNull Container container) {
+        synchronized(cache) {
+            @Nullable ContainerSlotMap slotMap = cache.get(container);
+            int slotCount = container.inventorySlots.size();
+            // Containers only ever get more slots, a different count means they changed
+            if(slotMap == null || slotMap.layout.slotCount != slotCount) {
+                @Nullable Layout template = templates.get(container.getClass());
+                if(template != null && template.slotCount == slotCount) {
+                    slotMap = new ContainerSlotMap(container, template);
+                } else {
+                    slotMap = new ContainerSlotMap(container);
+                    if(slotMap.layout.ranges != null && VanillaSlotMaps.hasSizeOnlyLayout(container.getClass())) {
+                        templates.put(container.getClass(), slotMap.layout);
+                    }
+                }
+                cache.put(container, slotMap);
+            }
+            return slotMap;
+        }
+    }
+
+    /**
+     * @return The slots of each section. Must not be modified.
+     */
+    @NotNull
+    public Map<ContainerSection, List<Slot>> getSlotRefs() {
+        return slotRefs;
+    }
+
+    public boolean hasSection(ContainerSection section) {
+        return slotRefs.containsKey(section);
+    }
+
+    /**
+     * @return The slot number, or -1 if there is no such slot.
+     */
+    public int getSlotNumber(ContainerSection section, int index) {
+        @Nullable int[] numbers = layout.slotNumbers.get(section);
+        return (numbers != null && index >= 0 && index < numbers.length) ? numbers[index] : -1;
+    }
+
+    /**
+     * @return The index in Container.inventorySlots, or -1 if there is no such slot.
+     */
+    public int getInventorySlotIndex(ContainerSection section, int index) {
+        @Nullable int[] indexes = layout.inventorySlotIndexes.get(section);
+        return (indexes != null && index >= 0 && index < indexes.length) ? indexes[index] : -1;
+    }
+
+    /**
+     * @return The indexes in Container.inventorySlots of the whole section, or null if there is no such section. Must
+     * not be modified.
+     */
+    @Nullable
+    public int[] getInventorySlotIndexes(ContainerSection section) {
+        return layout.inventorySlotIndexes.get(section);
+    }
+
+    /**
+     * @see IContainerManager#getSlotIndex(int, boolean)
+     */
+    public int getSlotIndex(int slotNumber, boolean preferInventory) {
+        if(slotNumber < 0 || slotNumber >= layout.slotIndexes.length) {
+            return -1;
+        }
+        return preferInventory ? layout.slotInventoryIndexes[slotNumber] : layout.slotIndexes[slotNumber];
+    }
+
+    /**
+     * @see IContainerManager#getSlotSection(int)
+     */
+    @Nullable
+    public ContainerSection getSlotSection(int slotNumber) {
+        return (slotNumber >= 0 && slotNumber < layout.slotSections.length) ? layout.slotSections[slotNumber] : null;
+    }
+
+    /**
+     * Lookup tables of a slot map, which only refer to slots by index so that they can be shared between containers of
+     * the same class.
+     */
+    private static class Layout {
+        private final int slotCount;
+        /**
+         * Slot numbers of each section, by index in the section.
+         */
+        @NotNull
+        private final Map<ContainerSection, int[]> slotNumbers = new EnumMap<>(ContainerSection.class);
+        /**
+         * Indexes in Container.inventorySlots of each section, by index in the section.
+         */
+        @NotNull
+        private final Map<ContainerSection, int[]> inventorySlotIndexes = new EnumMap<>(ContainerSection.class);
+        // By slot number: section (other than INVENTORY) and index in it, and index when preferring INVENTORY
+        @NotNull
+        private final ContainerSection[] slotSections;
+        @NotNull
+        private final int[] slotIndexes;
+        @NotNull
+        private final int[] slotInventoryIndexes;
+        /**
+         * Start and end index in Container.inventorySlots of each section, or null if sections aren't contiguous
+         * ranges of slots numbered by their index, in which case the layout can't be used as a template.
+         */
+        @Nullable
+        private Map<ContainerSection, int[]> ranges = new EnumMap<>(ContainerSection.class);
+
+        private Layout(@NotNull List<Slot> slots, @NotNull Map<ContainerSection, List<Slot>> slotRefs) {
+            slotCount = slots.size();
+            @NotNull Map<Slot, Integer> positions = new IdentityHashMap<>(slotCount);
+            for(int i = 0; i < slotCount; i++) {
+                positions.putIfAbsent(slots.get(i), i);
+            }
+
+            int maxSlotNumber = slotCount - 1;
+            for(@NotNull List<Slot> sectionSlots : slotRefs.values()) {
+                for(@Nullable Slot slot : sectionSlots) {
+                    if(slot != null) {
+                        maxSlotNumber = Math.max(maxSlotNumber, InvTweaksObfuscation.getSlotNumber(slot));
+                    }
+                }
+            }
+            slotSections = new ContainerSection[maxSlotNumber + 1];
+            slotIndexes = new int[maxSlotNumber + 1];
+            slotInventoryIndexes = new int[maxSlotNumber + 1];
+            Arrays.fill(slotIndexes, -1);
+            Arrays.fill(slotInventoryIndexes, -1);
+
+            // Slots can be in several sections, the first one in the map wins, as when going through it
+            for(@NotNull Map.Entry<ContainerSection, List<Slot>> entry : slotRefs.entrySet()) {
+                ContainerSection section = entry.getKey();
+                List<Slot> sectionSlots = entry.getValue();
+                @NotNull int[] numbers = new int[sectionSlots.size()];
+                @NotNull int[] inventoryIndexes = new int[sectionSlots.size()];
+                boolean preferred = section != ContainerSection.INVENTORY_NOT_HOTBAR && section != ContainerSection.INVENTORY_HOTBAR;
+
+                for(int i = 0; i < numbers.length; i++) {
+                    @Nullable Slot slot = sectionSlots.get(i);
+                    int slotNumber = (slot != null) ? InvTweaksObfuscation.getSlotNumber(slot) : -1;
+                    numbers[i] = slotNumber;
+                    inventoryIndexes[i] = (slot != null) ? positions.getOrDefault(slot, -1) : -1;
+
+                    if(slotNumber < 0) {
+                        continue;
+                    }
+                    if(section != ContainerSection.INVENTORY && slotSections[slotNumber] == null) {
+                        slotSections[slotNumber] = section;
+                        slotIndexes[slotNumber] = i;
+                    }
+                    if(preferred && slotInventoryIndexes[slotNumber] == -1) {
+                        slotInventoryIndexes[slotNumber] = i;
+                    }
+                }
+
+                slotNumbers.put(section, numbers);
+                inventorySlotIndexes.put(section, inventoryIndexes);
+                if(ranges != null) {
+                    int start = (numbers.length > 0) ? inventoryIndexes[0] : 0;
+                    for(int i = 0; i < numbers.length && ranges != null; i++) {
+                        if(inventoryIndexes[i] != start + i || numbers[i] != start + i) {
+                            ranges = null;
+                        }
+                    }
+                    if(ranges != null) {
+                        ranges.put(section, new int[]{start, start + numbers.length});
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return The sections of a container with the same slot count as the one the layout was made from.
+         */
+        @NotNull
+        private Map<ContainerSection, List<Slot>> slice(@NotNull List<Slot> slots) {
+            assert ranges != null;
+            @NotNull Map<ContainerSection, List<Slot>> slotRefs = new HashMap<>();
+            for(@NotNull Map.Entry<ContainerSection, int[]> range : ranges.entrySet()) {
+                slotRefs.put(range.getKey(), slots.subList(range.getValue()[0], range.getValue()[1]));
+            }
+            return slotRefs;
+        }
+    }
+}
@@ -4,17 +4,22 @@ import invtweaks.InvTweaks;
 import invtweaks.InvTweaksObfuscation;
 import invtweaks.api.container.ContainerSection;
 import invtweaks.forge.InvTweaksMod;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.client.multiplayer.PlayerControllerMP;
+import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.inventory.Container;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
 import static net.minecraft.inventory.ClickType.PICKUP;
+import static net.minecraft.inventory.ClickType.QUICK_CRAFT;
+import static net.minecraft.inventory.ClickType.QUICK_MOVE;
 
 /**
  * Allows to perform various operations on the inventory and/or containers. Works in both single and multiplayer.
@@ -28,21 +33,20 @@ public class DirectContainerManager implements IContainerManager {
     @NotNull
     private final Container container;
     @NotNull
-    private Map<ContainerSection, List<Slot>> slotRefs = new HashMap<>();
+    private final ContainerSlotMap slotMap;
+    @NotNull
+    private final Map<ContainerSection, List<Slot>> slotRefs;
+    /**
+     * Built on first use, then updated after each click.
+     */
+    @Nullable
+    private SlotOccupancy occupancy = null;
 
     // TODO: Refactor the mouse-coverage stuff that needs the GuiContainer into a different class.
     public DirectContainerManager(@NotNull Container cont) {
         container = cont;
-        initSlots();
-    }
-
-    private void initSlots() {
-        @Nullable Map<ContainerSection, List<Slot>> refs = InvTweaksObfuscation.getContainerSlotMap(container);
-        if(refs == null) {
-            slotRefs = new HashMap<>();
-        } else {
-            slotRefs = refs;
-        }
+        slotMap = ContainerSlotMap.get(container);
+        slotRefs = slotMap.getSlotRefs();
     }
 
     /**
@@ -158,22 +162,39 @@ public class DirectContainerManager implements IContainerManager {
     @Override
     public boolean moveSome(ContainerSection srcSection, int srcIndex, ContainerSection destSection, int destIndex, int amount) {
         @NotNull ItemStack source = getItemStack(srcSection, srcIndex);
-        if(source.isEmpty() || srcSection == destSection && srcIndex == destIndex) {
+        if(source.isEmpty() || srcSection == destSection && srcIndex == destIndex || amount <= 0) {
             return true;
         }
 
-        @NotNull ItemStack destination = getItemStack(srcSection, srcIndex);
+        @NotNull ItemStack destination = getItemStack(destSection, destIndex);
         int sourceSize = source.getCount();
         int movedAmount = Math.min(amount, sourceSize);
 
-        if(destination.isEmpty() || InvTweaksObfuscation.areItemStacksEqual(source, destination)) {
-
-            leftClick(srcSection, srcIndex);
-            for(int i = 0; i < movedAmount; i++) {
-                rightClick(destSection, destIndex);
+        if(destination.isEmpty() || ContainerSectionLayout.mergesOnClick(source, destination)) {
+            @Nullable Slot srcSlot = getSlot(srcSection, srcIndex);
+            @Nullable Slot destSlot = (destIndex == DROP_SLOT) ? null : getSlot(destSection, destIndex);
+            @Nullable IntList clicks = null;
+            if(srcSlot != null && (destSlot != null || destIndex == DROP_SLOT) && InvTweaks.getInstance().getHeldStack().isEmpty()) {
+                clicks = PartialMove.getClicks(srcSlot, source, destSlot, destination, movedAmount);
             }
-            if(movedAmount < sourceSize) {
+
+            if(clicks != null) {
+                for(int k = 0; k < clicks.size(); k++) {
+                    int click = clicks.getInt(k);
+                    if(PartialMove.getSlot(click) == PartialMove.SOURCE) {
+                        click(srcSection, srcIndex, PartialMove.isRightClick(click));
+                    } else {
+                        click(destSection, destIndex, PartialMove.isRightClick(click));
+                    }
+                }
+            } else {
                 leftClick(srcSection, srcIndex);
+                for(int i = 0; i < movedAmount; i++) {
+                    rightClick(destSection, destIndex);
+                }
+                if(movedAmount < sourceSize) {
+                    leftClick(srcSection, srcIndex);
+                }
             }
             return true;
         } else {
@@ -208,7 +229,71 @@ public class DirectContainerManager implements IContainerManager {
         if(slot != -1) {
             int data = (rightClick) ? 1 : 0;
             InvTweaksMod.proxy.slotClick(InvTweaks.getInstance().getPlayerController(), container.windowId, slot, data, PICKUP, InvTweaks.getInstance().getThePlayer());
+
+            if(occupancy != null && slot != DROP_SLOT) {
+                // Clicking special slots such as crafting outputs can change other slots as well
+                int slotIdx = slotMap.getInventorySlotIndex(section, index);
+                if(slotIdx != -1 && InvTweaksObfuscation.isBasicSlot(container.inventorySlots.get(slotIdx))) {
+                    occupancy.update(slotIdx);
+                } else {
+                    occupancy = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drags the held stack over the slots, with the same clicks as the vanilla left-button drag.
+     */
+    @Override
+    public boolean spread(ContainerSection section, @NotNull IntList indexes) {
+        if(InvTweaks.getInstance().getHeldStack().isEmpty() || indexes.isEmpty()) {
+            return false;
+        }
+
+        PlayerControllerMP playerController = InvTweaks.getInstance().getPlayerController();
+        EntityPlayer player = InvTweaks.getInstance().getThePlayer();
+        InvTweaksMod.proxy.slotClick(playerController, container.windowId, DROP_SLOT, Container.getQuickcraftMask(0, 0), QUICK_CRAFT, player);
+        for(int k = 0; k < indexes.size(); k++) {
+            int slot = indexToSlot(section, indexes.getInt(k));
+            if(slot >= 0) {
+                InvTweaksMod.proxy.slotClick(playerController, container.windowId, slot, Container.getQuickcraftMask(1, 0), QUICK_CRAFT, player);
+            }
+        }
+        InvTweaksMod.proxy.slotClick(playerController, container.windowId, DROP_SLOT, Container.getQuickcraftMask(2, 0), QUICK_CRAFT, player);
+
+        if(occupancy != null) {
+            for(int k = 0; k < indexes.size() && occupancy != null; k++) {
+                int slotIdx = slotMap.getInventorySlotIndex(section, indexes.getInt(k));
+                if(slotIdx != -1 && InvTweaksObfuscation.isBasicSlot(container.inventorySlots.get(slotIdx))) {
+                    occupancy.update(slotIdx);
+                } else {
+                    occupancy = null;
+                }
+            }
         }
+        return true;
+    }
+
+    @Override
+    public boolean quickMove(ContainerSection srcSection, int srcIndex, ContainerSection destSection) {
+        int slot = indexToSlot(srcSection, srcIndex);
+        if(slot < 0 || !InvTweaks.getInstance().getHeldStack().isEmpty() || !QuickMoveRoutes.matchesMove(container, srcSection, destSection)) {
+            return false;
+        }
+
+        InvTweaksMod.proxy.slotClick(InvTweaks.getInstance().getPlayerController(), container.windowId, slot, 0, QUICK_MOVE, InvTweaks.getInstance().getThePlayer());
+        // Any slot of the destination may have changed
+        occupancy = null;
+        return true;
+    }
+
+    @NotNull
+    private SlotOccupancy getOccupancy() {
+        if(occupancy == null) {
+            occupancy = new SlotOccupancy(slotMap, container.inventorySlots.size(), i -> InvTweaksObfuscation.getSlotStack(container, i));
+        }
+        return occupancy;
     }
 
     @Override
@@ -252,14 +337,12 @@ public class DirectContainerManager implements IContainerManager {
      */
     @Override
     public int getFirstEmptyIndex(ContainerSection section) {
-        int i = 0;
-        for(@NotNull Slot slot : slotRefs.get(section)) {
-            if(!slot.getHasStack()) {
-                return i;
-            }
-            i++;
-        }
-        return -1;
+        return hasSection(section) ? getOccupancy().getFirstEmptyIndex(section) : -1;
+    }
+
+    @Override
+    public int getFirstStackableIndex(ContainerSection section, @NotNull ItemStack stack) {
+        return hasSection(section) ? getOccupancy().getFirstStackableIndex(section, stack) : -1;
     }
 
     /**
@@ -288,19 +371,7 @@ public class DirectContainerManager implements IContainerManager {
      */
     @Override
     public int getSlotIndex(int slotNumber, boolean preferInventory) {
-        // TODO Caching with getSlotSection
-        for(ContainerSection section : slotRefs.keySet()) {
-            if(!preferInventory && section != ContainerSection.INVENTORY || (preferInventory && section != ContainerSection.INVENTORY_NOT_HOTBAR && section != ContainerSection.INVENTORY_HOTBAR)) {
-                int i = 0;
-                for(Slot slot : slotRefs.get(section)) {
-                    if(InvTweaksObfuscation.getSlotNumber(slot) == slotNumber) {
-                        return i;
-                    }
-                    i++;
-                }
-            }
-        }
-        return -1;
+        return slotMap.getSlotIndex(slotNumber, preferInventory);
     }
 
     /**
@@ -311,17 +382,7 @@ public class DirectContainerManager implements IContainerManager {
     @Nullable
     @Override
     public ContainerSection getSlotSection(int slotNumber) {
-        // TODO Caching with getSlotIndex
-        for(ContainerSection section : slotRefs.keySet()) {
-            if(section != ContainerSection.INVENTORY) {
-                for(Slot slot : slotRefs.get(section)) {
-                    if(InvTweaksObfuscation.getSlotNumber(slot) == slotNumber) {
-                        return section;
-                    }
-                }
-            }
-        }
-        return null;
+        return slotMap.getSlotSection(slotNumber);
     }
 
     /**
@@ -348,10 +409,12 @@ public class DirectContainerManager implements IContainerManager {
 
     private int getFirstEmptyUsableSlotNumber() {
         for(ContainerSection section : slotRefs.keySet()) {
-            for(@NotNull Slot slot : slotRefs.get(section)) {
+            @NotNull BitSet emptySlots = getOccupancy().getEmptySlots(section);
+            for(int i = emptySlots.nextSetBit(0); i >= 0; i = emptySlots.nextSetBit(i + 1)) {
+                @Nullable Slot slot = slotRefs.get(section).get(i);
                 // Use only standard slot (to make sure
                 // we can freely put and remove items there)
-                if(InvTweaksObfuscation.isBasicSlot(slot) && !slot.getHasStack()) {
+                if(InvTweaksObfuscation.isBasicSlot(slot)) {
                     return InvTweaksObfuscation.getSlotNumber(slot);
                 }
             }
@@ -369,15 +432,8 @@ public class DirectContainerManager implements IContainerManager {
             return DROP_SLOT;
         } else if(index < 0) {
             return -1;
-        } else if(hasSection(section)) {
-            Slot slot = slotRefs.get(section).get(index);
-            if(slot != null) {
-                return InvTweaksObfuscation.getSlotNumber(slot);
-            } else {
-                return -1;
-            }
         } else {
-            return -1;
+            return slotMap.getSlotNumber(section, index);
         }
     }
 
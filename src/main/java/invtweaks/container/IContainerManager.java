@@ -1,6 +1,9 @@
 package invtweaks.container;
 
+import invtweaks.InvTweaks;
+import invtweaks.InvTweaksObfuscation;
 import invtweaks.api.container.ContainerSection;
+import it.unimi.dsi.fastutil.ints.IntList;
 import net.minecraft.inventory.Container;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
@@ -68,6 +71,38 @@ public interface IContainerManager {
 
     void click(ContainerSection section, int index, boolean rightClick);
 
+    /**
+     * Spreads the held stack evenly over some slots, as dragging it over them with the left button does: each slot gets
+     * the same share of the held stack, and what can't be shared stays held. Slots must be empty or hold the same item,
+     * and there must be at least as many held items as slots.
+     *
+     * @return false if nothing is held or there are no slots.
+     */
+    default boolean spread(ContainerSection section, @NotNull IntList indexes) {
+        @NotNull ItemStack heldStack = getHeldStack();
+        if(heldStack.isEmpty() || indexes.isEmpty()) {
+            return false;
+        }
+        int share = heldStack.getCount() / indexes.size();
+        for(int k = 0; k < indexes.size(); k++) {
+            for(int i = 0; i < share; i++) {
+                rightClick(section, indexes.getInt(k));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shift-clicks a slot (ClickType.QUICK_MOVE), if the container is known to send the stack where moving it by hand
+     * to destSection would: into the stacks of the same item first, then into the first empty slots. The cursor must
+     * be empty.
+     *
+     * @return false if the shift-click would send the stack elsewhere, in which case nothing is done.
+     */
+    default boolean quickMove(ContainerSection srcSection, int srcIndex, ContainerSection destSection) {
+        return false;
+    }
+
     boolean hasSection(ContainerSection section);
 
     List<Slot> getSlots(ContainerSection section);
@@ -89,6 +124,21 @@ public interface IContainerManager {
      */
     int getFirstEmptyIndex(ContainerSection section);
 
+    /**
+     * @return The index of the first stack of the section that isn't full and that the given stack can be merged into,
+     * or -1 if there is none.
+     */
+    default int getFirstStackableIndex(ContainerSection section, @NotNull ItemStack stack) {
+        int size = getSize(section);
+        for(int i = 0; i < size; i++) {
+            @NotNull ItemStack sectionStack = getItemStack(section, i);
+            if(!sectionStack.isEmpty() && InvTweaksObfuscation.areItemsStackable(stack, sectionStack) && sectionStack.getCount() < sectionStack.getMaxStackSize()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * @return true if the specified slot exists and is empty, false otherwise.
      */
@@ -127,6 +177,21 @@ public interface IContainerManager {
     @NotNull
     ItemStack getItemStack(ContainerSection section, int index);
 
+    /**
+     * @return The stack attached to the cursor, as seen by this manager.
+     */
+    @NotNull
+    default ItemStack getHeldStack() {
+        return InvTweaks.getInstance().getHeldStack();
+    }
+
+    /**
+     * @return true if moves are only simulated until applyChanges() is called.
+     */
+    default boolean isMirrored() {
+        return false;
+    }
+
     Container getContainer();
 
     void applyChanges();
@@ -4,118 +4,462 @@ import invtweaks.InvTweaks;
 import invtweaks.InvTweaksObfuscation;
 import invtweaks.api.container.ContainerSection;
 import invtweaks.forge.InvTweaksMod;
+import invtweaks.network.packets.ITPacketSortLayout;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.inventory.ClickType;
 import net.minecraft.inventory.Container;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-
+import java.util.function.BooleanSupplier;
+
+import static net.minecraft.inventory.ClickType.PICKUP;
+import static net.minecraft.inventory.ClickType.QUICK_CRAFT;
+import static net.minecraft.inventory.ClickType.QUICK_MOVE;
+
+/**
+ * Works on a copy of the container: clicks are simulated in memory with the same rules as vanilla, and nothing is
+ * clicked for real until applyChanges(). By then, the real container is brought to the simulated one with as few
+ * clicks as possible: if stacks were only moved around, they are carried to their final slot directly (or the server
+ * is sent the layout), otherwise the simulated clicks are replayed.
+ * <p>
+ * Only plain slots are simulated. Output slots use up ingredients or payment when taken from, and modded slots can do
+ * anything, so clicks on other slots are made for real, see clickDirectly().
+ */
 public class MirroredContainerManager implements IContainerManager {
-    private ItemStack[] slotItems;
-    @Nullable
-    private ItemStack heldItem;
+    private static final Logger log = InvTweaks.log;
+
+    @NotNull
+    private final Container container;
+    @NotNull
+    private final ContainerSlotMap slotMap;
+    @NotNull
+    private final Map<ContainerSection, List<Slot>> slotRefs;
+    @NotNull
+    private final DirectContainerManager direct;
+    /**
+     * Simulated content of each slot, by index in Container.inventorySlots.
+     */
     @NotNull
-    @SuppressWarnings("MismatchedQueryAndUpdateOfCollection") // Partially implemented
-    private List<ItemStack> droppedItems = new ArrayList<>();
-    private Container container;
-    private Map<ContainerSection, List<Integer>> itemRefs;
+    private final ItemStack[] slotItems;
+    @NotNull
+    private ItemStack heldItem;
+    /**
+     * Built on first use, then updated after each simulated click.
+     */
     @Nullable
-    private Map<ContainerSection, List<Slot>> slotRefs;
+    private SlotOccupancy occupancy = null;
+    /**
+     * Content of the real container as of the last time changes were applied.
+     */
+    @NotNull
+    private final ItemStack[] realItems;
+    @NotNull
+    private ItemStack realHeldItem;
+    /**
+     * Clicks simulated since then, as slot indexes, mouse buttons and click types.
+     */
+    @NotNull
+    private final IntList clickSlots = new IntArrayList();
+    @NotNull
+    private final IntList clickButtons = new IntArrayList();
+    @NotNull
+    private final List<ClickType> clickTypes = new ArrayList<>();
+    // State before the last click, to drop pairs of clicks on a slot that cancel each other out
+    private int lastClickSlot = -1;
+    @NotNull
+    private ItemStack lastClickSlotItem = ItemStack.EMPTY;
+    @NotNull
+    private ItemStack lastClickHeldItem = ItemStack.EMPTY;
 
-    public MirroredContainerManager(Container cont) {
+    public MirroredContainerManager(@NotNull Container cont) {
         container = cont;
 
-        slotRefs = InvTweaksObfuscation.getContainerSlotMap(container);
-        if(slotRefs == null) {
-            slotRefs = new HashMap<>();
-        }
-
-        // TODO: Detect if there is a big enough unassigned section for inventory.
-        List<Slot> slots = container.inventorySlots;
-        int size = slots.size();
+        slotMap = ContainerSlotMap.get(container);
+        slotRefs = slotMap.getSlotRefs();
+        direct = new DirectContainerManager(container);
 
-        itemRefs = new HashMap<>();
-        for(@NotNull Map.Entry<ContainerSection, List<Slot>> section : slotRefs.entrySet()) {
-            List<Integer> slotIndices = section.getValue().stream().map(slots::indexOf).collect(Collectors.toList());
+        int size = container.inventorySlots.size();
+        slotItems = new ItemStack[size];
+        realItems = new ItemStack[size];
+        heldItem = realHeldItem = ItemStack.EMPTY;
+        readRealContainer();
+    }
 
-            itemRefs.put(section.getKey(), slotIndices);
+    /**
+     * Resets the copy to the content of the real container.
+     */
+    private void readRealContainer() {
+        List<Slot> slots = container.inventorySlots;
+        for(int i = 0; i < slotItems.length; ++i) {
+            realItems[i] = slots.get(i).getStack().copy();
+            slotItems[i] = realItems[i].copy();
         }
 
-        slotItems = new ItemStack[size];
-        for(int i = 0; i < size; ++i) {
-            slotItems[i] = slots.get(i).getStack().copy();
-        }
+        realHeldItem = InvTweaks.getInstance().getHeldStack().copy();
+        heldItem = realHeldItem.copy();
+        occupancy = null;
+        lastClickSlot = -1;
+    }
 
-        heldItem = InvTweaks.getInstance().getHeldStack();
+    private boolean isSimulated(int slotIdx) {
+        return slotIdx == DROP_SLOT || InvTweaksObfuscation.isBasicSlot(container.inventorySlots.get(slotIdx));
+    }
+
+    /**
+     * Clicks for real on slots that aren't simulated. The changes simulated so far are applied first, and the copy is
+     * read again from the container afterwards.
+     *
+     * @return The result of the clicks.
+     */
+    private boolean clickDirectly(@NotNull BooleanSupplier clicks) {
+        applyClicks();
+        boolean result = clicks.getAsBoolean();
+        readRealContainer();
+        return result;
     }
 
     @Override
     public boolean move(ContainerSection srcSection, int srcIndex, ContainerSection destSection, int destIndex) {
+        @NotNull ItemStack srcStack = getItemStack(srcSection, srcIndex);
+        @NotNull ItemStack destStack = getItemStack(destSection, destIndex);
         int srcSlotIdx = slotPositionToIndex(srcSection, srcIndex);
+        int destSlotIdx = slotPositionToIndex(destSection, destIndex);
 
-        if(destIndex == DROP_SLOT) {
-            droppedItems.add(slotItems[srcSlotIdx]);
-            slotItems[srcSlotIdx] = null;
+        if(srcStack.isEmpty()) {
+            return destIndex == DROP_SLOT;
+        } else if(srcSlotIdx == -1 || destSlotIdx == -1) {
+            return false;
+        } else if(srcSlotIdx == destSlotIdx) {
+            return true;
+        } else if(!isSimulated(srcSlotIdx) || !isSimulated(destSlotIdx)) {
+            return clickDirectly(() -> direct.move(srcSection, srcIndex, destSection, destIndex));
         }
 
-        int destSlotIdx = slotPositionToIndex(destSection, destIndex);
+        @NotNull Slot srcSlot = container.inventorySlots.get(srcSlotIdx);
+        if(destSlotIdx != DROP_SLOT) {
+            @NotNull Slot destSlot = container.inventorySlots.get(destSlotIdx);
+            if(!destSlot.isItemValid(srcStack)) {
+                return false;
+            }
+            if(!destStack.isEmpty() && !ContainerSectionLayout.mergesOnClick(srcStack, destStack) && !srcSlot.isItemValid(destStack)) {
+                return false;
+            }
+        }
+
+        if(!putHeldItemInInventory()) {
+            return false;
+        }
 
-        @NotNull Slot srcSlot = getSlot(srcSection, srcIndex);
-        @NotNull Slot destSlot = getSlot(destSection, destIndex);
+        // Swapping only takes three clicks here, as the cursor carries the destination stack back
+        clickSlot(srcSlotIdx, 0);
+        clickSlot(destSlotIdx, 0);
+        if(!heldItem.isEmpty()) {
+            // Only return to original slot if it can be placed in that slot.
+            // (Ex. crafting/furnace outputs)
+            if(srcSlot.isItemValid(heldItem)) {
+                clickSlot(srcSlotIdx, 0);
+            }
+            putHeldItemInInventory();
+        }
 
-        @NotNull ItemStack srcItem = slotItems[srcSlotIdx];
-        @NotNull ItemStack destItem = slotItems[destSlotIdx];
+        return true;
+    }
 
-        if(srcItem != null && !destSlot.isItemValid(srcItem)) {
+    @Override
+    public boolean moveSome(ContainerSection srcSection, int srcIndex, ContainerSection destSection, int destIndex, int amount) {
+        @NotNull ItemStack source = getItemStack(srcSection, srcIndex);
+        int srcSlotIdx = slotPositionToIndex(srcSection, srcIndex);
+        int destSlotIdx = slotPositionToIndex(destSection, destIndex);
+        if(source.isEmpty() || srcSlotIdx == destSlotIdx || amount <= 0) {
+            return true;
+        } else if(srcSlotIdx == -1 || destSlotIdx == -1) {
             return false;
+        } else if(!isSimulated(srcSlotIdx) || !isSimulated(destSlotIdx)) {
+            return clickDirectly(() -> direct.moveSome(srcSection, srcIndex, destSection, destIndex, amount));
         }
 
-        if(destItem != null && !srcSlot.isItemValid(destItem)) {
-            // TODO: Behavior says move dest to empty valid slot in this case.
+        @NotNull ItemStack destination = getItemStack(destSection, destIndex);
+        if(!destination.isEmpty() && !ContainerSectionLayout.mergesOnClick(source, destination)) {
+            return false;
+        }
+        if(!putHeldItemInInventory()) {
             return false;
         }
 
-        // TODO: Attempt to stack instead of always swapping?
-        slotItems[srcSlotIdx] = destItem;
-        slotItems[destSlotIdx] = srcItem;
+        int movedAmount = Math.min(amount, source.getCount());
+        @Nullable Slot destSlot = (destSlotIdx == DROP_SLOT) ? null : container.inventorySlots.get(destSlotIdx);
+        @Nullable IntList clicks = PartialMove.getClicks(container.inventorySlots.get(srcSlotIdx), source, destSlot, destination, movedAmount);
+        if(clicks != null) {
+            for(int k = 0; k < clicks.size(); k++) {
+                int click = clicks.getInt(k);
+                clickSlot((PartialMove.getSlot(click) == PartialMove.SOURCE) ? srcSlotIdx : destSlotIdx, PartialMove.isRightClick(click) ? 1 : 0);
+            }
+            return true;
+        }
 
+        clickSlot(srcSlotIdx, 0);
+        for(int i = 0; i < movedAmount; i++) {
+            clickSlot(destSlotIdx, 1);
+        }
+        if(!heldItem.isEmpty()) {
+            clickSlot(srcSlotIdx, 0);
+        }
         return true;
     }
 
     @Override
-    public boolean moveSome(ContainerSection srcSection, int srcIndex, ContainerSection destSection, int destIndex, int amount) {
-        // TODO: Can't currently do partial movements
-        return false;
+    public boolean putHoldItemDown(ContainerSection destSection, int destIndex) {
+        if(!heldItem.isEmpty()) {
+            if(isSlotEmpty(destSection, destIndex)) {
+                click(destSection, destIndex, false);
+                return heldItem.isEmpty();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean putHeldItemInInventory() {
+        if(!heldItem.isEmpty()) {
+            int firstEmptyIndex = getFirstEmptyIndex(ContainerSection.INVENTORY);
+            if(firstEmptyIndex == -1) {
+                return false;
+            }
+            leftClick(ContainerSection.INVENTORY, firstEmptyIndex);
+        }
+        return heldItem.isEmpty();
     }
 
     @Override
-    public boolean putHoldItemDown(ContainerSection destSection, int destIndex) {
-        int destSlotIdx = slotPositionToIndex(destSection, destIndex);
+    public void click(ContainerSection section, int index, boolean rightClick) {
+        int slotIdx = slotPositionToIndex(section, index);
+        if(slotIdx != -1 && isSimulated(slotIdx)) {
+            clickSlot(slotIdx, rightClick ? 1 : 0);
+        } else if(slotIdx != -1) {
+            clickDirectly(() -> {
+                direct.click(section, index, rightClick);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Simulates a click and records it, unless it changes nothing.
+     */
+    private void clickSlot(int slotIdx, int button) {
+        @NotNull ItemStack slotBefore = (slotIdx == DROP_SLOT) ? ItemStack.EMPTY : slotItems[slotIdx].copy();
+        @NotNull ItemStack heldBefore = heldItem.copy();
+
+        simulateClick(slotIdx, button);
+        if(occupancy != null) {
+            occupancy.update(slotIdx);
+        }
+
+        @NotNull ItemStack slotAfter = (slotIdx == DROP_SLOT) ? ItemStack.EMPTY : slotItems[slotIdx];
+        if(slotIdx != DROP_SLOT && ItemStack.areItemStacksEqual(slotBefore, slotAfter) && ItemStack.areItemStacksEqual(heldBefore, heldItem)) {
+            return;
+        }
+
+        if(slotIdx != DROP_SLOT && slotIdx == lastClickSlot && ItemStack.areItemStacksEqual(lastClickSlotItem, slotAfter) && ItemStack.areItemStacksEqual(lastClickHeldItem, heldItem)) {
+            // Back to where we were before the previous click: forget about both
+            clickSlots.removeInt(clickSlots.size() - 1);
+            clickButtons.removeInt(clickButtons.size() - 1);
+            clickTypes.remove(clickTypes.size() - 1);
+            lastClickSlot = -1;
+        } else {
+            clickSlots.add(slotIdx);
+            clickButtons.add(button);
+            clickTypes.add(PICKUP);
+            lastClickSlot = slotIdx;
+            lastClickSlotItem = slotBefore;
+            lastClickHeldItem = heldBefore;
+        }
+    }
+
+    /**
+     * Same outcome as Container.slotClick() with ClickType.PICKUP, on a plain slot.
+     */
+    private void simulateClick(int slotIdx, int button) {
+        if(slotIdx == DROP_SLOT) {
+            if(!heldItem.isEmpty()) {
+                if(button == 0) {
+                    heldItem = ItemStack.EMPTY;
+                } else {
+                    heldItem.shrink(1);
+                }
+            }
+        } else {
+            @NotNull Slot slot = container.inventorySlots.get(slotIdx);
+            @NotNull ItemStack slotStack = slotItems[slotIdx];
+            EntityPlayer player = InvTweaks.getInstance().getThePlayer();
+
+            if(slotStack.isEmpty()) {
+                if(!heldItem.isEmpty() && slot.isItemValid(heldItem)) {
+                    int amount = (button == 0) ? heldItem.getCount() : 1;
+                    slotItems[slotIdx] = heldItem.splitStack(Math.min(amount, slot.getItemStackLimit(heldItem)));
+                }
+            } else if(slot.canTakeStack(player)) {
+                if(heldItem.isEmpty()) {
+                    int amount = (button == 0) ? slotStack.getCount() : (slotStack.getCount() + 1) / 2;
+                    heldItem = slotStack.splitStack(amount);
+                } else if(slot.isItemValid(heldItem)) {
+                    if(ContainerSectionLayout.mergesOnClick(slotStack, heldItem)) {
+                        int amount = (button == 0) ? heldItem.getCount() : 1;
+                        amount = Math.min(amount, slot.getItemStackLimit(heldItem) - slotStack.getCount());
+                        amount = Math.min(amount, heldItem.getMaxStackSize() - slotStack.getCount());
+                        if(amount > 0) {
+                            heldItem.shrink(amount);
+                            slotStack.grow(amount);
+                        }
+                    } else if(heldItem.getCount() <= slot.getItemStackLimit(heldItem)) {
+                        slotItems[slotIdx] = heldItem;
+                        heldItem = slotStack;
+                    }
+                }
+            }
+
+            if(slotItems[slotIdx].isEmpty()) {
+                slotItems[slotIdx] = ItemStack.EMPTY;
+            }
+        }
+
+        if(heldItem.isEmpty()) {
+            heldItem = ItemStack.EMPTY;
+        }
+    }
 
-        if(slotItems[destSlotIdx] != null) {
+    /**
+     * Same outcome as a left-button drag (ClickType.QUICK_CRAFT) over the slots, recorded as such.
+     */
+    @Override
+    public boolean spread(ContainerSection section, @NotNull IntList indexes) {
+        if(heldItem.isEmpty()) {
             return false;
         }
 
-        slotItems[destSlotIdx] = heldItem;
-        heldItem = null;
+        // Slots the drag goes through, checked as the container does when the mouse enters them
+        @NotNull IntList draggedSlots = new IntArrayList();
+        for(int k = 0; k < indexes.size(); k++) {
+            int slotIdx = slotPositionToIndex(section, indexes.getInt(k));
+            if(slotIdx < 0 || draggedSlots.contains(slotIdx)) {
+                continue;
+            }
+            @NotNull Slot slot = container.inventorySlots.get(slotIdx);
+            @NotNull ItemStack slotStack = slotItems[slotIdx];
+            boolean canAdd = slotStack.isEmpty() || (heldItem.isItemEqual(slotStack) && ItemStack.areItemStackTagsEqual(heldItem, slotStack) && slotStack.getCount() <= heldItem.getMaxStackSize());
+            if(canAdd && isSimulated(slotIdx) && slot.isItemValid(heldItem) && container.canDragIntoSlot(slot) && heldItem.getCount() > draggedSlots.size()) {
+                draggedSlots.add(slotIdx);
+            }
+        }
+        if(draggedSlots.isEmpty()) {
+            return false;
+        }
 
+        clickSlots.add(DROP_SLOT);
+        clickButtons.add(Container.getQuickcraftMask(0, 0));
+        clickTypes.add(QUICK_CRAFT);
+
+        int share = heldItem.getCount() / draggedSlots.size();
+        for(int k = 0; k < draggedSlots.size(); k++) {
+            int slotIdx = draggedSlots.getInt(k);
+            @NotNull Slot slot = container.inventorySlots.get(slotIdx);
+            int current = slotItems[slotIdx].isEmpty() ? 0 : slotItems[slotIdx].getCount();
+            int count = Math.min(current + share, Math.min(heldItem.getMaxStackSize(), slot.getItemStackLimit(heldItem)));
+            if(count > current) {
+                @NotNull ItemStack newStack = heldItem.copy();
+                newStack.setCount(count);
+                heldItem.shrink(count - current);
+                slotItems[slotIdx] = newStack;
+            }
+            if(occupancy != null) {
+                occupancy.update(slotIdx);
+            }
+
+            clickSlots.add(slotIdx);
+            clickButtons.add(Container.getQuickcraftMask(1, 0));
+            clickTypes.add(QUICK_CRAFT);
+        }
+
+        clickSlots.add(DROP_SLOT);
+        clickButtons.add(Container.getQuickcraftMask(2, 0));
+        clickTypes.add(QUICK_CRAFT);
+
+        if(heldItem.isEmpty()) {
+            heldItem = ItemStack.EMPTY;
+        }
+        lastClickSlot = -1;
         return true;
     }
 
+    /**
+     * Same outcome as Container.mergeItemStack() into the destination, called until nothing moves, recorded as a
+     * single shift-click.
+     */
     @Override
-    public void click(ContainerSection section, int index, boolean rightClick) {
-        // TODO: Currently unused externally -- consider if it needs to really be in the interface.
+    public boolean quickMove(ContainerSection srcSection, int srcIndex, ContainerSection destSection) {
+        int srcSlotIdx = slotPositionToIndex(srcSection, srcIndex);
+        @Nullable int[] destSlots = slotMap.getInventorySlotIndexes(destSection);
+        if(srcSlotIdx < 0 || destSlots == null || !heldItem.isEmpty() || !QuickMoveRoutes.matchesMove(container, srcSection, destSection)) {
+            return false;
+        }
+
+        @NotNull ItemStack stack = slotItems[srcSlotIdx];
+        int countBefore = stack.getCount();
+        if(stack.isStackable()) {
+            for(int k = 0; k < destSlots.length && !stack.isEmpty(); k++) {
+                int slotIdx = destSlots[k];
+                @NotNull ItemStack destStack = slotItems[slotIdx];
+                if(!destStack.isEmpty() && ContainerSectionLayout.mergesOnClick(destStack, stack)) {
+                    int limit = Math.min(container.inventorySlots.get(slotIdx).getSlotStackLimit(), stack.getMaxStackSize());
+                    int amount = Math.min(stack.getCount(), limit - destStack.getCount());
+                    if(amount > 0) {
+                        destStack.grow(amount);
+                        stack.shrink(amount);
+                        updateOccupancy(slotIdx);
+                    }
+                }
+            }
+        }
+        for(int k = 0; k < destSlots.length && !stack.isEmpty(); k++) {
+            int slotIdx = destSlots[k];
+            @NotNull Slot slot = container.inventorySlots.get(slotIdx);
+            if(slotItems[slotIdx].isEmpty() && slot.isItemValid(stack)) {
+                slotItems[slotIdx] = stack.splitStack(Math.min(stack.getCount(), slot.getSlotStackLimit()));
+                updateOccupancy(slotIdx);
+            }
+        }
+
+        if(stack.getCount() != countBefore) {
+            if(stack.isEmpty()) {
+                slotItems[srcSlotIdx] = ItemStack.EMPTY;
+            }
+            updateOccupancy(srcSlotIdx);
+            clickSlots.add(srcSlotIdx);
+            clickButtons.add(0);
+            clickTypes.add(QUICK_MOVE);
+            lastClickSlot = -1;
+        }
+        return true;
+    }
+
+    private void updateOccupancy(int slotIdx) {
+        if(occupancy != null) {
+            occupancy.update(slotIdx);
+        }
     }
 
     @Override
     public boolean hasSection(ContainerSection section) {
-        return itemRefs.containsKey(section);
+        return slotMap.hasSection(section);
     }
 
     @Override
@@ -130,71 +474,81 @@ public class MirroredContainerManager implements IContainerManager {
 
     @Override
     public int getSize(ContainerSection section) {
-        return itemRefs.get(section).size();
+        if(hasSection(section)) {
+            return slotRefs.get(section).size();
+        } else {
+            return 0;
+        }
     }
 
     @Override
     public int getFirstEmptyIndex(ContainerSection section) {
-        int i = 0;
-        for(int slot : itemRefs.get(section)) {
-            if(slotItems[slot].isEmpty()) {
-                return i;
-            }
-            i++;
+        return hasSection(section) ? getOccupancy().getFirstEmptyIndex(section) : -1;
+    }
+
+    @Override
+    public int getFirstStackableIndex(ContainerSection section, @NotNull ItemStack stack) {
+        return hasSection(section) ? getOccupancy().getFirstStackableIndex(section, stack) : -1;
+    }
+
+    @NotNull
+    private SlotOccupancy getOccupancy() {
+        if(occupancy == null) {
+            occupancy = new SlotOccupancy(slotMap, slotItems.length, i -> slotItems[i]);
         }
-        return -1;
+        return occupancy;
     }
 
     @Override
     public boolean isSlotEmpty(ContainerSection section, int slot) {
-        return getItemStack(section, slot).isEmpty();
+        return hasSection(section) && getItemStack(section, slot).isEmpty();
     }
 
-    @NotNull
+    @Nullable
     @Override
     public Slot getSlot(ContainerSection section, int index) {
-        return container.getSlot(slotPositionToIndex(section, index));
+        List<Slot> slots = slotRefs.get(section);
+        if(slots != null) {
+            return slots.get(index);
+        } else {
+            return null;
+        }
     }
 
     @Override
     public int getSlotIndex(int slotNumber, boolean preferInventory) {
-        // TODO Caching with getSlotSection
-        for(ContainerSection section : slotRefs.keySet()) {
-            if(!preferInventory && section != ContainerSection.INVENTORY || (preferInventory && section != ContainerSection.INVENTORY_NOT_HOTBAR && section != ContainerSection.INVENTORY_HOTBAR)) {
-                int i = 0;
-                for(Slot slot : slotRefs.get(section)) {
-                    if(InvTweaksObfuscation.getSlotNumber(slot) == slotNumber) {
-                        return i;
-                    }
-                    i++;
-                }
-            }
-        }
-        return -1;
+        return slotMap.getSlotIndex(slotNumber, preferInventory);
     }
 
     @Nullable
     @Override
     public ContainerSection getSlotSection(int slotNumber) {
-        // TODO Caching with getSlotIndex
-        for(ContainerSection section : slotRefs.keySet()) {
-            if(section != ContainerSection.INVENTORY) {
-                for(Slot slot : slotRefs.get(section)) {
-                    if(InvTweaksObfuscation.getSlotNumber(slot) == slotNumber) {
-                        return section;
-                    }
-                }
-            }
-        }
-        return null;
+        return slotMap.getSlotSection(slotNumber);
     }
 
     @Override
     @NotNull
     public ItemStack getItemStack(ContainerSection section, int index) {
-        return slotItems[slotPositionToIndex(section, index)];
+        int slotIdx = slotPositionToIndex(section, index);
+        if(slotIdx >= 0 && slotIdx < slotItems.length) {
+            return slotItems[slotIdx];
+        } else {
+            return ItemStack.EMPTY;
+        }
+    }
+
+    @NotNull
+    @Override
+    public ItemStack getHeldStack() {
+        return heldItem;
+    }
+
+    @Override
+    public boolean isMirrored() {
+        return true;
     }
 
+    @NotNull
     @Override
     public Container getContainer() {
         return container;
@@ -202,10 +556,165 @@ public class MirroredContainerManager implements IContainerManager {
 
     @Override
     public void applyChanges() {
-        // TODO: Figure out what is needed to match container with virtual inventory.
+        applyClicks();
         InvTweaksMod.proxy.sortComplete();
     }
 
+    /**
+     * Brings the real container to the simulated one.
+     */
+    private void applyClicks() {
+        if(!clickSlots.isEmpty()) {
+            if(!isRealContainerUnchanged() || !applyAsPermutation()) {
+                for(int k = 0; k < clickSlots.size(); k++) {
+                    realClick(clickSlots.getInt(k), clickButtons.getInt(k), clickTypes.get(k));
+                }
+            }
+
+            clickSlots.clear();
+            clickButtons.clear();
+            clickTypes.clear();
+            lastClickSlot = -1;
+            for(int i = 0; i < slotItems.length; i++) {
+                realItems[i] = slotItems[i].copy();
+            }
+            realHeldItem = heldItem.copy();
+
+            if(!isRealContainerUnchanged()) {
+                log.warn("The container does not match its simulated copy.");
+            }
+        }
+    }
+
+    private boolean isRealContainerUnchanged() {
+        for(int i = 0; i < realItems.length; i++) {
+            if(!ItemStack.areItemStacksEqual(container.inventorySlots.get(i).getStack(), realItems[i])) {
+                return false;
+            }
+        }
+        return ItemStack.areItemStacksEqual(InvTweaks.getInstance().getHeldStack(), realHeldItem);
+    }
+
+    /**
+     * If every simulated stack is one of the real stacks, moved to another slot, moves them there directly.
+     *
+     * @return false if the changes are not a permutation, or could not be applied as such.
+     */
+    private boolean applyAsPermutation() {
+        if(!realHeldItem.isEmpty() || !heldItem.isEmpty()) {
+            return false;
+        }
+        @Nullable int[] destinations = getPermutation();
+        if(destinations == null) {
+            return false;
+        }
+
+        if(applyAsLayout(destinations)) {
+            return true;
+        }
+
+        @Nullable IntList clicks = SlotPermutation.getClicks(realItems, destinations, i -> InvTweaksObfuscation.isBasicSlot(container.inventorySlots.get(i)));
+        if(clicks == null) {
+            return false;
+        }
+        for(int k = 0; k < clicks.size(); k++) {
+            realClick(clicks.getInt(k), 0);
+        }
+        return true;
+    }
+
+    /**
+     * @return For every real stack, the slot it ends up in, or null if the simulated stacks are not just the real ones
+     * moved around.
+     */
+    @Nullable
+    private int[] getPermutation() {
+        int size = slotItems.length;
+        @NotNull int[] destinations = new int[size];
+        @NotNull boolean[] placed = new boolean[size];
+        for(int i = 0; i < size; i++) {
+            destinations[i] = -1;
+        }
+
+        // Stacks that didn't move first, so that they don't get swapped with an identical stack
+        for(int j = 0; j < size; j++) {
+            if(!slotItems[j].isEmpty() && ItemStack.areItemStacksEqual(realItems[j], slotItems[j])) {
+                destinations[j] = j;
+                placed[j] = true;
+            }
+        }
+
+        for(int j = 0; j < size; j++) {
+            if(slotItems[j].isEmpty() || placed[j]) {
+                continue;
+            }
+            int from = -1;
+            for(int i = 0; i < size; i++) {
+                if(destinations[i] == -1 && !realItems[i].isEmpty() && ItemStack.areItemStacksEqual(realItems[i], slotItems[j])) {
+                    from = i;
+                    break;
+                }
+            }
+            if(from == -1) {
+                return null;
+            }
+            destinations[from] = j;
+            placed[j] = true;
+        }
+
+        for(int i = 0; i < size; i++) {
+            if(!realItems[i].isEmpty() && destinations[i] == -1) {
+                return null;
+            }
+        }
+        return destinations;
+    }
+
+    /**
+     * Sends the permutation as a layout of the slots involved, for the server to apply.
+     */
+    private boolean applyAsLayout(@NotNull int[] destinations) {
+        if(container != InvTweaks.getInstance().getThePlayer().openContainer) {
+            return false;
+        }
+
+        int size = destinations.length;
+        @NotNull int[] localIndexes = new int[size];
+        @NotNull IntList slotIndexes = new IntArrayList();
+        for(int i = 0; i < size; i++) {
+            localIndexes[i] = -1;
+        }
+        for(int i = 0; i < size; i++) {
+            int j = destinations[i];
+            if(j != -1 && j != i) {
+                for(int index : new int[]{i, j}) {
+                    if(localIndexes[index] == -1) {
+                        localIndexes[index] = slotIndexes.size();
+                        slotIndexes.add(index);
+                    }
+                }
+            }
+        }
+        if(slotIndexes.isEmpty()) {
+            return true;
+        }
+
+        @NotNull int[] slotNumbers = new int[slotIndexes.size()];
+        @NotNull int[] localDestinations = new int[slotIndexes.size()];
+        for(int k = 0; k < slotIndexes.size(); k++) {
+            int i = slotIndexes.getInt(k);
+            slotNumbers[k] = InvTweaksObfuscation.getSlotNumber(container.inventorySlots.get(i));
+            localDestinations[k] = (destinations[i] == -1) ? -1 : localIndexes[destinations[i]];
+        }
+
+        return InvTweaksMod.proxy.sortLayout(new ITPacketSortLayout(container.windowId, slotNumbers, new IntArrayList(), new IntArrayList(), localDestinations));
+    }
+
+    private void realClick(int slotIdx, int button, @NotNull ClickType type) {
+        int slotNumber = (slotIdx == DROP_SLOT) ? DROP_SLOT : InvTweaksObfuscation.getSlotNumber(container.inventorySlots.get(slotIdx));
+        InvTweaksMod.proxy.slotClick(InvTweaks.getInstance().getPlayerController(), container.windowId, slotNumber, button, type, InvTweaks.getInstance().getThePlayer());
+    }
+
     /**
      * Converts section/index values to slot ID.
      *
@@ -216,10 +725,8 @@ public class MirroredContainerManager implements IContainerManager {
             return DROP_SLOT;
         } else if(index < 0) {
             return -1;
-        } else if(hasSection(section)) {
-            return itemRefs.get(section).get(index);
         } else {
-            return -1;
+            return slotMap.getInventorySlotIndex(section, index);
         }
     }
 }
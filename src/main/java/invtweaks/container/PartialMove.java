@@ -0,0 +1,173 @@
+package invtweaks.container;
+
+import invtweaks.InvTweaksObfuscation;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.inventory.Slot;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Finds the fewest clicks moving part of a stack to another slot. Right-clicking a stack with an empty cursor picks up
+ * half of it, so halving the source (or the destination, to take back what went over) reaches any amount in a
+ * logarithmic number of clicks, where putting items down one by one takes a click per item.
+ * <p>
+ * Every click costs the same, a round trip to the server, so the cheapest sequence is the shortest one. It is found
+ * with a breadth-first search over the amounts in the source slot and on the cursor, the destination holding the rest.
+ */
+class PartialMove {
+    // A click is encoded as (slot << 1) | button
+    static final int SOURCE = 0;
+    static final int DESTINATION = 1;
+
+    /**
+     * Past this many items in both slots, searching costs more than the clicks it saves.
+     */
+    private static final int MAX_ITEMS = 255;
+
+    private final int total;
+    private final int sourceLimit;
+    private final int destLimit;
+    private final boolean drop;
+
+    private PartialMove(int total_, int sourceLimit_, int destLimit_, boolean drop_) {
+        total = total_;
+        sourceLimit = sourceLimit_;
+        destLimit = destLimit_;
+        drop = drop_;
+    }
+
+    static int getSlot(int click) {
+        return click >> 1;
+    }
+
+    static boolean isRightClick(int click) {
+        return (click & 1) != 0;
+    }
+
+    /**
+     * Computes the clicks moving items from a stack to an empty slot or a stack of the same item. The cursor must be
+     * empty before the first click, and is empty again after the last one.
+     *
+     * @param destSlot The destination slot, or null to drop the items
+     * @param amount   Items to move, capped to what the source holds and what fits in the destination
+     * @return The clicks, or null if the slots aren't plain slots or the stacks are too large to bother.
+     */
+    @Nullable
+    static IntList getClicks(@NotNull Slot sourceSlot, @NotNull ItemStack source, @Nullable Slot destSlot, @NotNull ItemStack dest, int amount) {
+        // Output and armor slots don't take or give items like plain stacks do
+        if(!InvTweaksObfuscation.isBasicSlot(sourceSlot) || destSlot != null && !InvTweaksObfuscation.isBasicSlot(destSlot)) {
+            return null;
+        }
+
+        int sourceSize = source.getCount();
+        int destSize = dest.isEmpty() ? 0 : dest.getCount();
+        int sourceLimit = Math.min(source.getMaxStackSize(), sourceSlot.getItemStackLimit(source));
+        // Dropped items are gone, never drop more than asked
+        int destLimit = (destSlot != null) ? Math.min(source.getMaxStackSize(), destSlot.getItemStackLimit(source)) : destSize + amount;
+        amount = Math.min(amount, Math.min(sourceSize, destLimit - destSize));
+        if(amount <= 0) {
+            return new IntArrayList();
+        }
+
+        int total = sourceSize + destSize;
+        if(total > MAX_ITEMS || sourceSize > sourceLimit || destSize > destLimit) {
+            return null;
+        }
+        return new PartialMove(total, sourceLimit, destLimit, destSlot == null).search(sourceSize, sourceSize - amount);
+    }
+
+    @Nullable
+    private IntList search(int sourceSize, int sourceTarget) {
+        // States are (items in source, items on cursor), by index
+        int width = total + 1;
+        @NotNull int[] previous = new int[width * width];
+        @NotNull int[] previousClick = new int[width * width];
+        Arrays.fill(previous, -1);
+        @NotNull int[] queue = new int[width * width];
+        int head = 0;
+        int tail = 0;
+
+        int start = sourceSize * width;
+        int goal = sourceTarget * width;
+        previous[start] = start;
+        queue[tail++] = start;
+        @NotNull int[] next = new int[8];
+        while(head < tail && previous[goal] == -1) {
+            int state = queue[head++];
+            int count = getNextStates(state / width, state % width, next);
+            for(int k = 0; k < count; k += 2) {
+                int nextState = next[k];
+                if(previous[nextState] == -1) {
+                    previous[nextState] = state;
+                    previousClick[nextState] = next[k + 1];
+                    queue[tail++] = nextState;
+                }
+            }
+        }
+        if(previous[goal] == -1) {
+            return null;
+        }
+
+        @NotNull IntList clicks = new IntArrayList();
+        for(int state = goal; state != start; state = previous[state]) {
+            clicks.add(0, previousClick[state]);
+        }
+        return clicks;
+    }
+
+    /**
+     * Writes the states one click away, each followed by the click, with the same rules as a vanilla PICKUP click.
+     *
+     * @return The number of ints written.
+     */
+    private int getNextStates(int source, int held, @NotNull int[] next) {
+        // When dropping, "destination" counts the items already dropped, which can't come back
+        int dest = total - source - held;
+        int n = 0;
+        if(held == 0) {
+            if(source > 0) {
+                next[n++] = state(0, source);
+                next[n++] = click(SOURCE, false);
+                next[n++] = state(source / 2, source - source / 2);
+                next[n++] = click(SOURCE, true);
+            }
+            if(!drop && dest > 0) {
+                next[n++] = state(source, dest);
+                next[n++] = click(DESTINATION, false);
+                next[n++] = state(source, (dest + 1) / 2);
+                next[n++] = click(DESTINATION, true);
+            }
+        } else {
+            if(source < sourceLimit) {
+                int put = Math.min(held, sourceLimit - source);
+                next[n++] = state(source + put, held - put);
+                next[n++] = click(SOURCE, false);
+                next[n++] = state(source + 1, held - 1);
+                next[n++] = click(SOURCE, true);
+            }
+            if(dest < destLimit) {
+                // Left-clicking outside drops the whole cursor, a slot only takes what fits
+                if(!drop || held <= destLimit - dest) {
+                    int put = Math.min(held, destLimit - dest);
+                    next[n++] = state(source, held - put);
+                    next[n++] = click(DESTINATION, false);
+                }
+                next[n++] = state(source, held - 1);
+                next[n++] = click(DESTINATION, true);
+            }
+        }
+        return n;
+    }
+
+    private int state(int source, int held) {
+        return source * (total + 1) + held;
+    }
+
+    private static int click(int slot, boolean rightClick) {
+        return (slot << 1) | (rightClick ? 1 : 0);
+    }
+}
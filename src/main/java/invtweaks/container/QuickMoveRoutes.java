@@ -0,0 +1,35 @@
+package invtweaks.container;
+
+import invtweaks.api.container.ContainerSection;
+import net.minecraft.inventory.Container;
+import net.minecraft.inventory.ContainerChest;
+import net.minecraft.inventory.ContainerDispenser;
+import net.minecraft.inventory.ContainerShulkerBox;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Where a shift-click (ClickType.QUICK_MOVE) sends a stack, for the containers where it is known. There, a single
+ * click does what moving the stack by hand does: merging it into the stacks of the same item of the target section,
+ * then putting the rest into its first empty slots.
+ */
+class QuickMoveRoutes {
+    /**
+     * Containers whose transferStackInSlot() fills the container slots in order with stacks from the player inventory.
+     * Subclasses are left out, as they may route stacks differently.
+     */
+    private static final Set<Class<?>> fillingContainers = new HashSet<>(Arrays.asList(ContainerChest.class, ContainerDispenser.class, ContainerShulkerBox.class));
+
+    /**
+     * @return true if shift-clicking a stack of srcSection moves it to destSection the same way as move() would.
+     */
+    static boolean matchesMove(@NotNull Container container, ContainerSection srcSection, ContainerSection destSection) {
+        // The other way around, vanilla fills the player inventory from the end
+        return destSection == ContainerSection.CHEST
+                && (srcSection == ContainerSection.INVENTORY || srcSection == ContainerSection.INVENTORY_NOT_HOTBAR || srcSection == ContainerSection.INVENTORY_HOTBAR)
+                && fillingContainers.contains(container.getClass());
+    }
+}
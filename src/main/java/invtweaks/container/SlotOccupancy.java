@@ -0,0 +1,163 @@
+package invtweaks.container;
+
+import invtweaks.InvTweaksObfuscation;
+import invtweaks.InvTweaksStackKey;
+import invtweaks.api.container.ContainerSection;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Which slots of each section are empty, and which hold stacks that aren't full, by item. Container managers keep it
+ * up to date slot by slot as they click, so that finding a free or mergeable slot only goes through candidate slots
+ * instead of whole sections.
+ */
+class SlotOccupancy {
+    @NotNull
+    private final ContainerSlotMap slotMap;
+    /**
+     * Current stack of each slot, by index in Container.inventorySlots.
+     */
+    @NotNull
+    private final IntFunction<ItemStack> stacks;
+    // Sections each slot is part of, and its index in them, by index in Container.inventorySlots
+    @NotNull
+    private final ContainerSection[][] slotSections;
+    @NotNull
+    private final int[][] slotIndexes;
+    /**
+     * Key of the partial stack each slot is listed under, if any, by index in Container.inventorySlots.
+     */
+    @NotNull
+    private final InvTweaksStackKey[] slotKeys;
+    @NotNull
+    private final Map<ContainerSection, BitSet> emptySlots = new EnumMap<>(ContainerSection.class);
+    @NotNull
+    private final Map<ContainerSection, Map<InvTweaksStackKey, BitSet>> partialStacks = new EnumMap<>(ContainerSection.class);
+
+    SlotOccupancy(@NotNull ContainerSlotMap slotMap_, int slotCount, @NotNull IntFunction<ItemStack> stacks_) {
+        slotMap = slotMap_;
+        stacks = stacks_;
+
+        @NotNull int[] sectionCounts = new int[slotCount];
+        for(ContainerSection section : slotMap.getSlotRefs().keySet()) {
+            for(int slot : slotMap.getInventorySlotIndexes(section)) {
+                if(slot >= 0 && slot < slotCount) {
+                    sectionCounts[slot]++;
+                }
+            }
+            emptySlots.put(section, new BitSet());
+            partialStacks.put(section, new HashMap<>());
+        }
+
+        slotSections = new ContainerSection[slotCount][];
+        slotIndexes = new int[slotCount][];
+        for(int slot = 0; slot < slotCount; slot++) {
+            slotSections[slot] = new ContainerSection[sectionCounts[slot]];
+            slotIndexes[slot] = new int[sectionCounts[slot]];
+            sectionCounts[slot] = 0;
+        }
+        for(ContainerSection section : slotMap.getSlotRefs().keySet()) {
+            @NotNull int[] sectionSlots = slotMap.getInventorySlotIndexes(section);
+            for(int i = 0; i < sectionSlots.length; i++) {
+                int slot = sectionSlots[i];
+                if(slot >= 0 && slot < slotCount) {
+                    slotSections[slot][sectionCounts[slot]] = section;
+                    slotIndexes[slot][sectionCounts[slot]] = i;
+                    sectionCounts[slot]++;
+                }
+            }
+        }
+
+        slotKeys = new InvTweaksStackKey[slotCount];
+        for(int slot = 0; slot < slotCount; slot++) {
+            update(slot);
+        }
+    }
+
+    /**
+     * Reads the stack of a slot again, after it was clicked.
+     *
+     * @param slot Index in Container.inventorySlots
+     */
+    void update(int slot) {
+        if(slot < 0 || slot >= slotKeys.length) {
+            return;
+        }
+
+        @NotNull ItemStack stack = stacks.apply(slot);
+        boolean empty = stack.isEmpty();
+        @Nullable InvTweaksStackKey oldKey = slotKeys[slot];
+        // Copied, the key must not change while in a map
+        @Nullable InvTweaksStackKey newKey = (!empty && stack.getCount() < stack.getMaxStackSize()) ? getKey(stack).copy() : null;
+        slotKeys[slot] = newKey;
+
+        for(int k = 0; k < slotSections[slot].length; k++) {
+            ContainerSection section = slotSections[slot][k];
+            int index = slotIndexes[slot][k];
+            emptySlots.get(section).set(index, empty);
+
+            Map<InvTweaksStackKey, BitSet> sectionStacks = partialStacks.get(section);
+            if(oldKey != null) {
+                BitSet oldSlots = sectionStacks.get(oldKey);
+                oldSlots.clear(index);
+                if(oldSlots.isEmpty()) {
+                    sectionStacks.remove(oldKey);
+                }
+            }
+            if(newKey != null) {
+                sectionStacks.computeIfAbsent(newKey, key -> new BitSet()).set(index);
+            }
+        }
+    }
+
+    /**
+     * @return -1 if no slot is free
+     */
+    int getFirstEmptyIndex(ContainerSection section) {
+        @Nullable BitSet empty = emptySlots.get(section);
+        return (empty != null) ? empty.nextSetBit(0) : -1;
+    }
+
+    /**
+     * @return The empty slots of the section, by index. Must not be modified.
+     */
+    @NotNull
+    BitSet getEmptySlots(ContainerSection section) {
+        @Nullable BitSet empty = emptySlots.get(section);
+        return (empty != null) ? empty : new BitSet();
+    }
+
+    /**
+     * @return The first stack of the section that the given stack can be merged into, or -1 if there is none.
+     */
+    int getFirstStackableIndex(ContainerSection section, @NotNull ItemStack stack) {
+        @Nullable Map<InvTweaksStackKey, BitSet> sectionStacks = partialStacks.get(section);
+        if(stack.isEmpty() || sectionStacks == null) {
+            return -1;
+        }
+        @Nullable BitSet candidates = sectionStacks.get(getKey(stack));
+        if(candidates == null) {
+            return -1;
+        }
+        // Keys only narrow the search down, stacking rules are checked on each candidate
+        for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if(InvTweaksObfuscation.areItemsStackable(stack, stacks.apply(slotMap.getInventorySlotIndex(section, i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * What stacks must share to be merged. Damage is left out for damageable items, which ItemStack.isItemEqual()
+     * ignores as well.
+     */
+    @NotNull
+    private static InvTweaksStackKey getKey(@NotNull ItemStack stack) {
+        return new InvTweaksStackKey(stack.getItem(), stack.isItemStackDamageable() ? 0 : stack.getItemDamage(), stack.getTagCompound());
+    }
+}
@@ -0,0 +1,156 @@
+package invtweaks.container;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Turns a permutation of the stacks of a section into left clicks. The permutation is broken into cycles (and chains
+ * ending on an empty slot), and the cursor carries each stack straight to its destination, picking up the stack that
+ * was there: a cycle of n stacks costs n + 1 clicks, instead of up to 6 clicks per swap through an intermediate slot.
+ */
+public class SlotPermutation {
+    @NotNull
+    private final ItemStack[] stacks;
+    @NotNull
+    private final int[] destinations;
+    @NotNull
+    private final boolean[] parkingSlots;
+    @NotNull
+    private final IntList clicks = new IntArrayList();
+
+    private SlotPermutation(@NotNull ItemStack[] stacks_, @NotNull int[] destinations_, @NotNull IntPredicate canPark) {
+        stacks = stacks_;
+        destinations = destinations_;
+
+        // Slots that are empty and stay empty can hold a stack for a while
+        parkingSlots = new boolean[stacks.length];
+        for(int i = 0; i < stacks.length; i++) {
+            parkingSlots[i] = stacks[i].isEmpty() && canPark.test(i);
+        }
+        for(int destination : destinations) {
+            if(destination != -1) {
+                parkingSlots[destination] = false;
+            }
+        }
+    }
+
+    /**
+     * Computes the clicks moving every stack to its destination. The cursor must be empty before the first click, and
+     * is empty again after the last one.
+     *
+     * @param stacks       The current contents of the section
+     * @param destinations For every slot, the slot its stack must be moved to, or -1 if it is empty. Every destination
+     *                     must be used at most once.
+     * @return The indexes of the slots to left-click, in order, or null if the permutation can't be done with clicks
+     * only (stacks of the same item would merge, and there's no free slot to work around it) or is invalid.
+     */
+    @Nullable
+    public static IntList getClicks(@NotNull ItemStack[] stacks, @NotNull int[] destinations) {
+        return getClicks(stacks, destinations, i -> true);
+    }
+
+    /**
+     * @param canPark Tells which empty slots may hold any stack for a while, when slots don't all accept the same
+     *                items.
+     * @see #getClicks(ItemStack[], int[])
+     */
+    @Nullable
+    public static IntList getClicks(@NotNull ItemStack[] stacks, @NotNull int[] destinations, @NotNull IntPredicate canPark) {
+        @NotNull SlotPermutation permutation = new SlotPermutation(stacks, destinations, canPark);
+        return permutation.computeClicks() ? permutation.clicks : null;
+    }
+
+    private boolean computeClicks() {
+        int size = stacks.length;
+        @NotNull boolean[] visited = new boolean[size];
+        @NotNull boolean[] targeted = new boolean[size];
+        for(int i = 0; i < size; i++) {
+            if(destinations[i] != -1) {
+                if(stacks[i].isEmpty() || targeted[destinations[i]]) {
+                    return false;
+                }
+                targeted[destinations[i]] = true;
+            }
+        }
+
+        // Chains first: they start on a stack nothing will replace, and end on an empty slot
+        for(int i = 0; i < size; i++) {
+            if(destinations[i] != -1 && destinations[i] != i && !targeted[i]) {
+                if(!carry(i, visited)) {
+                    return false;
+                }
+            }
+        }
+
+        // Then all that's left are cycles
+        for(int i = 0; i < size; i++) {
+            if(destinations[i] != -1 && destinations[i] != i && !visited[i]) {
+                if(!carry(i, visited)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the stack of the given slot and carries it (and the stacks it replaces) around until an empty slot is
+     * reached.
+     */
+    private boolean carry(int start, @NotNull boolean[] visited) {
+        @NotNull IntList parkedSlots = new IntArrayList(), parkedDestinations = new IntArrayList();
+
+        visited[start] = true;
+        clicks.add(start);
+        @NotNull ItemStack held = stacks[start];
+        int position = destinations[start];
+
+        while(position != start && !stacks[position].isEmpty()) {
+            @NotNull ItemStack stack = stacks[position];
+            visited[position] = true;
+
+            if(ContainerSectionLayout.mergesOnClick(held, stack)) {
+                if(held.getCount() != stack.getCount()) {
+                    // Clicking would merge them: put the held stack aside, and put it in place once the slot is free
+                    int parkingSlot = takeParkingSlot();
+                    if(parkingSlot == -1) {
+                        return false;
+                    }
+                    clicks.add(parkingSlot);
+                    clicks.add(position);
+                    parkedSlots.add(parkingSlot);
+                    parkedDestinations.add(position);
+                }
+                // else both stacks are interchangeable: keep the held one as if it was the other one
+            } else {
+                clicks.add(position);
+            }
+
+            held = stack;
+            position = destinations[position];
+        }
+        clicks.add(position);
+
+        for(int k = 0; k < parkedSlots.size(); k++) {
+            clicks.add(parkedSlots.getInt(k));
+            clicks.add(parkedDestinations.getInt(k));
+            parkingSlots[parkedSlots.getInt(k)] = true;
+        }
+        return true;
+    }
+
+    private int takeParkingSlot() {
+        for(int i = 0; i < parkingSlots.length; i++) {
+            if(parkingSlots[i]) {
+                parkingSlots[i] = false;
+                return i;
+            }
+        }
+        return -1;
+    }
+}
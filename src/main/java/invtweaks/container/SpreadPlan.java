@@ -0,0 +1,175 @@
+package invtweaks.container;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The clicks needed to bring stacks of the same item to given counts, mostly made of drags: a stack with too many
+ * items is picked up, then spread over the stacks with too few, each one getting the same share (see
+ * IContainerManager.spread()). Spreading over N slots takes N+2 clicks, where moving items one by one takes a click per
+ * item.
+ * <p>
+ * Counts are worked out in memory first, filling all the stacks that are short at the same pace, then clicks are made
+ * and checked against the planned counts.
+ */
+public class SpreadPlan {
+    private static final int PICK_UP = 0;
+    private static final int PUT_DOWN = 1;
+    private static final int PUT_ONE = 2;
+    private static final int SPREAD = 3;
+
+    @NotNull
+    private final List<Step> steps = new ArrayList<>();
+
+    private SpreadPlan() {
+    }
+
+    /**
+     * @param indexes Slots of the stacks, in the section
+     * @param counts  Current size of each stack
+     * @param targets Wanted size of each stack, adding up to the same total
+     */
+    @NotNull
+    public static SpreadPlan plan(@NotNull int[] indexes, @NotNull int[] counts, @NotNull int[] targets) {
+        @NotNull SpreadPlan plan = new SpreadPlan();
+        int n = indexes.length;
+        @NotNull int[] current = counts.clone();
+        int held = 0;
+
+        while(true) {
+            if(held == 0) {
+                // Pick up the stack with the most extra items
+                int source = -1;
+                for(int i = 0; i < n; i++) {
+                    if(current[i] > targets[i] && (source == -1 || current[i] - targets[i] > current[source] - targets[source])) {
+                        source = i;
+                    }
+                }
+                if(source == -1) {
+                    break;
+                }
+                held = current[source];
+                current[source] = 0;
+                plan.add(PICK_UP, indexes, current, source);
+            }
+
+            // Stacks that are short, the shortest first
+            @NotNull List<Integer> shortStacks = new ArrayList<>();
+            for(int i = 0; i < n; i++) {
+                if(current[i] < targets[i]) {
+                    shortStacks.add(i);
+                }
+            }
+            if(shortStacks.isEmpty()) {
+                // Counts don't add up, keep what's held for the caller to put down
+                break;
+            }
+            shortStacks.sort(Comparator.comparingInt(i -> current[i] - targets[i]));
+
+            // Spread over as many stacks as possible, as long as none of them gets more than it needs
+            int spreadSize = 0;
+            for(int k = shortStacks.size(); k >= 2; k--) {
+                int share = held / k;
+                int lowestNeed = targets[shortStacks.get(k - 1)] - current[shortStacks.get(k - 1)];
+                if(share >= 1 && share <= lowestNeed) {
+                    spreadSize = k;
+                    break;
+                }
+            }
+
+            if(spreadSize > 0) {
+                int share = held / spreadSize;
+                @NotNull int[] spread = new int[spreadSize];
+                for(int k = 0; k < spreadSize; k++) {
+                    spread[k] = shortStacks.get(k);
+                    current[spread[k]] += share;
+                }
+                held -= share * spreadSize;
+                plan.add(SPREAD, indexes, current, spread);
+            } else {
+                int i = shortStacks.get(0);
+                if(held <= targets[i] - current[i]) {
+                    current[i] += held;
+                    held = 0;
+                    plan.add(PUT_DOWN, indexes, current, i);
+                } else {
+                    current[i]++;
+                    held--;
+                    plan.add(PUT_ONE, indexes, current, i);
+                }
+            }
+        }
+        return plan;
+    }
+
+    private void add(int action, @NotNull int[] indexes, @NotNull int[] current, int... stacks) {
+        @NotNull Step step = new Step(action, stacks.length);
+        for(int k = 0; k < stacks.length; k++) {
+            step.indexes.add(indexes[stacks[k]]);
+            step.expectedCounts[k] = current[stacks[k]];
+        }
+        steps.add(step);
+    }
+
+    /**
+     * @return The number of clicks the plan takes.
+     */
+    public int getClickCount() {
+        int clicks = 0;
+        for(@NotNull Step step : steps) {
+            clicks += (step.action == SPREAD) ? step.indexes.size() + 2 : 1;
+        }
+        return clicks;
+    }
+
+    /**
+     * Clicks through the plan, stopping as soon as a stack doesn't end up with the planned count, for example if the
+     * slots refuse drags. Items may still be held then.
+     *
+     * @return false if the stacks didn't end up with the planned counts.
+     */
+    public boolean apply(@NotNull ContainerSectionManager section) {
+        for(@NotNull Step step : steps) {
+            switch(step.action) {
+                case PICK_UP:
+                case PUT_DOWN:
+                    section.leftClick(step.indexes.getInt(0));
+                    break;
+                case PUT_ONE:
+                    section.click(step.indexes.getInt(0), true);
+                    break;
+                case SPREAD:
+                    if(!section.spread(step.indexes)) {
+                        return false;
+                    }
+                    break;
+            }
+
+            for(int k = 0; k < step.indexes.size(); k++) {
+                if(section.getItemStack(step.indexes.getInt(k)).getCount() != step.expectedCounts[k]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static class Step {
+        private final int action;
+        @NotNull
+        private final IntList indexes;
+        @NotNull
+        private final int[] expectedCounts;
+
+        private Step(int action_, int size) {
+            action = action_;
+            indexes = new IntArrayList(size);
+            expectedCounts = new int[size];
+        }
+    }
+}
@@ -2,6 +2,7 @@ package invtweaks.container;
 
 import invtweaks.InvTweaksConst;
 import invtweaks.api.container.ContainerSection;
+import invtweaks.api.container.ContainerSectionCallback;
 import net.minecraft.client.gui.GuiScreen;
 import net.minecraft.client.gui.inventory.GuiContainerCreative;
 import net.minecraft.creativetab.CreativeTabs;
@@ -15,12 +16,43 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings("unused")
 public class VanillaSlotMaps {
+    /**
+     * Container classes that reached a builder only depending on the slot count, see ContainerSlotMap. Mapped to false
+     * for those reaching it through a ContainerSectionCallback, which can change the sections it built.
+     */
+    private static final Map<Class<?>, Boolean> sizeOnlyLayouts = new ConcurrentHashMap<>();
+
+    static boolean hasSizeOnlyLayout(@NotNull Class<?> containerClass) {
+        return sizeOnlyLayouts.getOrDefault(containerClass, false);
+    }
+
+    private static void addSizeOnlyLayout(@NotNull Container container) {
+        sizeOnlyLayouts.computeIfAbsent(container.getClass(), containerClass -> !hasSectionCallback(containerClass));
+    }
+
+    /**
+     * @return Whether the container class or one of its parents has a ContainerSectionCallback, in which case the
+     * builder isn't the direct mapping of the class.
+     */
+    private static boolean hasSectionCallback(@NotNull Class<?> containerClass) {
+        for(@Nullable Class<?> c = containerClass; c != null && c != Container.class; c = c.getSuperclass()) {
+            for(@NotNull Method method : c.getDeclaredMethods()) {
+                if(method.isAnnotationPresent(ContainerSectionCallback.class)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @NotNull
     public static Map<ContainerSection, List<Slot>> containerPlayerSlots(@NotNull Container container) {
         @NotNull Map<ContainerSection, List<Slot>> slotRefs = new HashMap<>();
@@ -57,6 +89,7 @@ public class VanillaSlotMaps {
     @NotNull
     public static Map<ContainerSection, List<Slot>> containerChestDispenserSlots(@NotNull Container container) {
         @NotNull Map<ContainerSection, List<Slot>> slotRefs = new HashMap<>();
+        addSizeOnlyLayout(container);
 
         int size = container.inventorySlots.size();
 
@@ -155,6 +188,7 @@ public class VanillaSlotMaps {
     @NotNull
     public static Map<ContainerSection, List<Slot>> unknownContainerSlots(@NotNull Container container) {
         @NotNull Map<ContainerSection, List<Slot>> slotRefs = new HashMap<>();
+        addSizeOnlyLayout(container);
 
         int size = container.inventorySlots.size();
 
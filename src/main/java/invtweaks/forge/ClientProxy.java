@@ -5,8 +5,9 @@ import invtweaks.api.IItemTreeListener;
 import invtweaks.api.SortingMethod;
 import invtweaks.api.container.ContainerSection;
 import invtweaks.network.ITPacketHandlerClient;
-import invtweaks.network.packets.ITPacketClick;
+import invtweaks.network.packets.ITPacketClickBatch;
 import invtweaks.network.packets.ITPacketSortComplete;
+import invtweaks.network.packets.ITPacketSortLayout;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.inventory.GuiContainer;
 import net.minecraft.client.multiplayer.PlayerControllerMP;
@@ -15,16 +16,20 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.inventory.ClickType;
 import net.minecraft.inventory.Container;
 import net.minecraft.item.ItemStack;
+import net.minecraftforge.client.event.GuiOpenEvent;
+import net.minecraftforge.client.event.GuiScreenEvent;
 import net.minecraftforge.fml.client.FMLClientHandler;
 import net.minecraftforge.fml.client.registry.ClientRegistry;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.InputEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 import net.minecraftforge.fml.common.network.FMLNetworkEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.input.Keyboard;
 
 public class ClientProxy extends CommonProxy {
@@ -32,6 +37,11 @@ public class ClientProxy extends CommonProxy {
     public boolean serverSupportEnabled = false;
     public boolean serverSupportDetected = false;
     private InvTweaks instance;
+    /**
+     * Clicks done locally but not sent to the server yet.
+     */
+    @Nullable
+    private ITPacketClickBatch pendingClicks = null;
 
     @Override
     public void preInit(@NotNull FMLPreInitializationEvent e) {
@@ -64,9 +74,38 @@ public class ClientProxy extends CommonProxy {
                     instance.onTickInGame();
                 }
             }
+            // Send whatever the mod clicked during this tick before the player's own clicks
+            flushClicks();
         }
     }
 
+    // Input is tracked from events, in game and in screens, rather than polled on each tick
+    @SubscribeEvent
+    public void onKeyInput(InputEvent.KeyInputEvent e) {
+        instance.getInputState().onKeyboardEvent();
+    }
+
+    @SubscribeEvent
+    public void onMouseInput(InputEvent.MouseInputEvent e) {
+        instance.getInputState().onMouseEvent();
+    }
+
+    @SubscribeEvent(receiveCanceled = true)
+    public void onGuiKeyboardInput(GuiScreenEvent.KeyboardInputEvent.Pre e) {
+        instance.getInputState().onKeyboardEvent();
+    }
+
+    @SubscribeEvent(receiveCanceled = true)
+    public void onGuiMouseInput(GuiScreenEvent.MouseInputEvent.Pre e) {
+        instance.getInputState().onMouseEvent();
+    }
+
+    @SubscribeEvent
+    public void onGuiOpen(GuiOpenEvent e) {
+        // Events may go unseen while screens change
+        instance.getInputState().resync();
+    }
+
     @SubscribeEvent
     public void notifyPickup(PlayerEvent.ItemPickupEvent e) {
         instance.setItemPickupPending(true);
@@ -91,7 +130,13 @@ public class ClientProxy extends CommonProxy {
         if(serverSupportEnabled) {
             player.openContainer.slotClick(slot, data, action, player);
 
-            invtweaksChannel.get(Side.CLIENT).writeOutbound(new ITPacketClick(slot, data, action, windowId));
+            if(pendingClicks != null && (pendingClicks.window != windowId || pendingClicks.isFull())) {
+                flushClicks();
+            }
+            if(pendingClicks == null) {
+                pendingClicks = new ITPacketClickBatch(windowId);
+            }
+            pendingClicks.addClick(slot, data, action);
         } else {
             playerController.windowClick(windowId, slot, data, action, player);
         }
@@ -100,10 +145,30 @@ public class ClientProxy extends CommonProxy {
     @Override
     public void sortComplete() {
         if(serverSupportEnabled) {
+            flushClicks();
             invtweaksChannel.get(Side.CLIENT).writeOutbound(new ITPacketSortComplete());
         }
     }
 
+    @Override
+    public boolean sortLayout(@NotNull ITPacketSortLayout layout) {
+        EntityPlayer player = FMLClientHandler.instance().getClient().player;
+        if(!serverSupportEnabled || player == null || !layout.apply(player)) {
+            return false;
+        }
+        // Clicks done before must reach the server first, the layout is based on their outcome
+        flushClicks();
+        invtweaksChannel.get(Side.CLIENT).writeOutbound(layout);
+        return true;
+    }
+
+    private void flushClicks() {
+        if(pendingClicks != null) {
+            invtweaksChannel.get(Side.CLIENT).writeOutbound(pendingClicks);
+            pendingClicks = null;
+        }
+    }
+
     @Override
     public void addOnLoadListener(IItemTreeListener listener) {
         InvTweaksItemTreeLoader.addOnLoadListener(listener);
@@ -5,10 +5,12 @@ import invtweaks.api.IItemTreeListener;
 import invtweaks.api.InvTweaksAPI;
 import invtweaks.api.SortingMethod;
 import invtweaks.api.container.ContainerSection;
+import invtweaks.forge.asm.ContainerTransformer;
 import invtweaks.integration.ItemListSorter;
 import invtweaks.network.ITMessageToMessageCodec;
 import invtweaks.network.ITPacketHandlerServer;
 import invtweaks.network.packets.ITPacketLogin;
+import invtweaks.network.packets.ITPacketSortLayout;
 import net.minecraft.client.multiplayer.PlayerControllerMP;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.inventory.ClickType;
@@ -45,6 +47,8 @@ public class CommonProxy implements InvTweaksAPI {
 
     public void postInit(FMLPostInitializationEvent e) {
         ItemListSorter.LinkJEITComparator();
+        ContainerTransformer.logStatistics();
+        ContainerTransformer.saveCache();
     }
 
     public void serverAboutToStart(@NotNull FMLServerAboutToStartEvent e) {
@@ -78,6 +82,15 @@ public class CommonProxy implements InvTweaksAPI {
 
     }
 
+    /**
+     * Applies a sorted layout locally and sends it to the server, which moves the stacks itself.
+     *
+     * @return false if the server can't do it, in which case the layout has to be applied with clicks.
+     */
+    public boolean sortLayout(@NotNull ITPacketSortLayout layout) {
+        return false;
+    }
+
     @Override
     public void addOnLoadListener(IItemTreeListener listener) {
 
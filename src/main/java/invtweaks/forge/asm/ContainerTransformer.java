@@ -8,17 +8,16 @@ import net.minecraft.launchwrapper.IClassTransformer;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
+import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class ContainerTransformer implements IClassTransformer {
@@ -36,12 +35,20 @@ public class ContainerTransformer implements IClassTransformer {
     private static final String ANNOTATION_INVENTORY_CONTAINER = "Linvtweaks/api/container/InventoryContainer;";
     private static final String ANNOTATION_IGNORE_CONTAINER = "Linvtweaks/api/container/IgnoreContainer;";
     private static final String ANNOTATION_CONTAINER_SECTION_CALLBACK = "Linvtweaks/api/container/ContainerSectionCallback;";
+    private static final String COMPATIBILITY_CONFIG_FILE = "config/InvTweaksCompatibility.xml";
+    private static final String CACHE_FILE = "config/InvTweaksTransformerCache.bin";
     private static final Logger logger = org.apache.logging.log4j.LogManager.getLogger();
     private static List<String> uninterestingPackages = Lists.newArrayList("net.minecraft.", "net.minecraftforge.", "joptsimple.", "com.mojang.", "com.google.gson.", "io.netty.", "oshi.", "com.sun.jna.", "com.ibm.icu.", "org.slf4j.", "javassist.", "gnu.trove.", "paulscode.sound.", "com.jcraft.jogg.", "com.jcraft.jorbis.", "it.unimi.dsi.fastutil.");
     @NotNull
     private static Map<String, ContainerInfo> standardClasses = new HashMap<>();
     @NotNull
     private static Map<String, ContainerInfo> configClasses = new HashMap<>();
+    @Nullable
+    private static TransformerCache cache = null;
+    // Startup statistics: mod classes whose annotations were read, classes known from the cache, and classes actually rewritten
+    private static final AtomicInteger scannedClasses = new AtomicInteger();
+    private static final AtomicInteger cachedClasses = new AtomicInteger();
+    private static final AtomicInteger transformedClasses = new AtomicInteger();
 
     public ContainerTransformer() {
         lateInit();
@@ -191,13 +198,15 @@ public class ContainerTransformer implements IClassTransformer {
         standardClasses.put("net.minecraft.inventory.ContainerShulkerBox", new ContainerInfo(true, false, true, getVanillaSlotMapInfo("containerChestDispenserSlots")));
 
         try {
-            configClasses = CompatibilityConfigLoader.load("config/InvTweaksCompatibility.xml");
+            configClasses = CompatibilityConfigLoader.load(COMPATIBILITY_CONFIG_FILE);
         } catch(FileNotFoundException ex) {
             configClasses = new HashMap<>();
         } catch(Exception ex) {
             configClasses = new HashMap<>();
             ex.printStackTrace();
         }
+
+        cache = TransformerCache.load(new File(CACHE_FILE), TransformerCache.fingerprint(new File("mods"), new File(COMPATIBILITY_CONFIG_FILE)));
     }
 
     private static MethodNode findAnnotatedMethod(@NotNull ClassNode cn, @NotNull String annotationDesc) {
@@ -213,6 +222,30 @@ public class ContainerTransformer implements IClassTransformer {
         return null;
     }
 
+    /**
+     * Reads only the class-level annotations, skipping code, debug information and frames.
+     *
+     * @return true if the class carries one of the InvTweaks container annotations.
+     */
+    private static boolean hasContainerAnnotation(@NotNull ClassReader cr) {
+        @NotNull ContainerAnnotationScanner scanner = new ContainerAnnotationScanner();
+        cr.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return scanner.found;
+    }
+
+    public static void logStatistics() {
+        logger.info("InvTweaks: scanned {} classes for container annotations, {} known from cache, transformed {} classes", scannedClasses.get(), cachedClasses.get(), transformedClasses.get());
+    }
+
+    /**
+     * Saves what was learned about mod classes so far, for the next launch.
+     */
+    public static void saveCache() {
+        if(cache != null) {
+            cache.save();
+        }
+    }
+
     private static byte[] doTransform(byte[] bytes, Consumer<ClassNode> transform) {
         @NotNull ClassReader cr = new ClassReader(bytes);
         @NotNull ClassNode cn = new ClassNode(Opcodes.ASM4);
@@ -221,6 +254,7 @@ public class ContainerTransformer implements IClassTransformer {
         cr.accept(cn, 0);
 
         transform.accept(cn);
+        transformedClasses.incrementAndGet();
 
         cn.accept(cw);
         return cw.toByteArray();
@@ -274,7 +308,32 @@ public class ContainerTransformer implements IClassTransformer {
             }
         }
 
+        if(cache != null) {
+            if(cache.isPlainClass(transformedName)) {
+                cachedClasses.incrementAndGet();
+                return bytes;
+            }
+            if(cache.isIgnoredContainer(transformedName)) {
+                cachedClasses.incrementAndGet();
+                return doTransform(bytes, ContainerTransformer::transformBaseContainer);
+            }
+            final ContainerInfo cachedInfo = cache.getContainer(transformedName);
+            if(cachedInfo != null) {
+                cachedClasses.incrementAndGet();
+                return doTransform(bytes, cn -> transformContainer(cn, cachedInfo));
+            }
+        }
+
         @NotNull ClassReader cr = new ClassReader(bytes);
+        scannedClasses.incrementAndGet();
+        // Most classes have none of our annotations, don't build a whole tree for them
+        if(!hasContainerAnnotation(cr)) {
+            if(cache != null) {
+                cache.putPlainClass(transformedName);
+            }
+            return bytes;
+        }
+
         @NotNull ClassNode cn = new ClassNode(Opcodes.ASM4);
         @NotNull ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
 
@@ -341,6 +400,10 @@ public class ContainerTransformer implements IClassTransformer {
                         // Annotation to restore default properties.
 
                         transformBaseContainer(cn);
+                        transformedClasses.incrementAndGet();
+                        if(cache != null) {
+                            cache.putIgnoredContainer(transformedName);
+                        }
 
                         cn.accept(cw);
                         return cw.toByteArray();
@@ -355,6 +418,10 @@ public class ContainerTransformer implements IClassTransformer {
                         }
 
                         transformContainer(cn, apiInfo);
+                        transformedClasses.incrementAndGet();
+                        if(cache != null) {
+                            cache.putContainer(transformedName, apiInfo);
+                        }
 
                         cn.accept(cw);
                         return cw.toByteArray();
@@ -365,4 +432,33 @@ public class ContainerTransformer implements IClassTransformer {
 
         return bytes;
     }
+
+    private static class ContainerAnnotationScanner extends ClassVisitor {
+        private boolean found = false;
+
+        ContainerAnnotationScanner() {
+            super(Opcodes.ASM4);
+        }
+
+        @Nullable
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            if(visible && (ANNOTATION_CHEST_CONTAINER.equals(desc) || ANNOTATION_INVENTORY_CONTAINER.equals(desc) || ANNOTATION_IGNORE_CONTAINER.equals(desc))) {
+                found = true;
+            }
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            return null;
+        }
+    }
 }
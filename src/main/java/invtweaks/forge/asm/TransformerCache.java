@@ -0,0 +1,306 @@
+package invtweaks.forge.asm;
+
+import invtweaks.forge.asm.compatibility.ContainerInfo;
+import invtweaks.forge.asm.compatibility.MethodInfo;
+import net.minecraft.launchwrapper.Launch;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Type;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * What the transformer decided about mod classes on previous launches, so that known classes don't have to be read
+ * again: classes without InvTweaks annotations, annotated containers with the resulting ContainerInfo, and
+ * containers marked with @IgnoreContainer.
+ * <p>
+ * The cache is only valid for the set of class files and compatibility config it was built with.
+ */
+class TransformerCache {
+    private static final Logger logger = org.apache.logging.log4j.LogManager.getLogger();
+    private static final int FORMAT_VERSION = 1;
+
+    @NotNull
+    private final File file;
+    @NotNull
+    private final String fingerprint;
+    @NotNull
+    private final Set<String> plainClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    @NotNull
+    private final Set<String> ignoredContainers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    @NotNull
+    private final Map<String, ContainerInfo> containers = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    private TransformerCache(@NotNull File file_, @NotNull String fingerprint_) {
+        file = file_;
+        fingerprint = fingerprint_;
+    }
+
+    /**
+     * Computes a fingerprint of the classes that can be loaded and the compatibility config: the sources of the launch
+     * class loader (the game, libraries, coremods and the dev classpath) along with the mods folder, whose jars are
+     * only added to the class loader later on. Files are identified by path, size and modification date: reading
+     * every jar would cost more than what the cache saves.
+     */
+    @NotNull
+    static String fingerprint(@NotNull File modsDir, @NotNull File compatibilityFile) {
+        try {
+            @NotNull ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            @NotNull DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(FORMAT_VERSION);
+
+            // By absolute path, a file can be both in the mods folder and a class loader source
+            @NotNull SortedMap<String, File> classFiles = new TreeMap<>();
+            @NotNull List<File> modFiles = new ArrayList<>();
+            listModFiles(modsDir, modFiles, 2);
+            for(@NotNull File modFile : modFiles) {
+                classFiles.put(modFile.getAbsolutePath(), modFile);
+            }
+            if(Launch.classLoader != null) {
+                for(@NotNull URL source : Launch.classLoader.getSources()) {
+                    listSourceFiles(source, classFiles);
+                }
+            }
+            for(@NotNull Map.Entry<String, File> classFile : classFiles.entrySet()) {
+                out.writeUTF(classFile.getKey());
+                out.writeLong(classFile.getValue().length());
+                out.writeLong(classFile.getValue().lastModified());
+            }
+
+            if(compatibilityFile.isFile()) {
+                out.write(Files.readAllBytes(compatibilityFile.toPath()));
+            }
+            out.flush();
+
+            @NotNull StringBuilder hex = new StringBuilder();
+            for(byte b : MessageDigest.getInstance("SHA-1").digest(bytes.toByteArray())) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(@NotNull IOException | NoSuchAlgorithmException e) {
+            logger.warn("InvTweaks: unable to fingerprint mods, transformer cache disabled", e);
+            return "";
+        }
+    }
+
+    private static void listModFiles(@NotNull File dir, @NotNull List<File> modFiles, int depth) {
+        File[] files = dir.listFiles();
+        if(files == null) {
+            return;
+        }
+        for(@NotNull File file : files) {
+            if(file.isDirectory()) {
+                // Versioned folders such as mods/1.12.2
+                if(depth > 1) {
+                    listModFiles(file, modFiles, depth - 1);
+                }
+            } else if(file.getName().endsWith(".jar") || file.getName().endsWith(".zip")) {
+                modFiles.add(file);
+            }
+        }
+    }
+
+    /**
+     * Adds a class loader source: a jar, or every file of a classes folder as found on the dev classpath.
+     */
+    private static void listSourceFiles(@NotNull URL source, @NotNull Map<String, File> classFiles) throws IOException {
+        if(!"file".equals(source.getProtocol())) {
+            return;
+        }
+        @NotNull File file;
+        try {
+            file = new File(source.toURI());
+        } catch(URISyntaxException | IllegalArgumentException e) {
+            file = new File(source.getPath());
+        }
+
+        if(file.isDirectory()) {
+            try(@NotNull Stream<Path> paths = Files.walk(file.toPath())) {
+                paths.filter(Files::isRegularFile).forEach(path -> classFiles.put(path.toAbsolutePath().toString(), path.toFile()));
+            } catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else if(file.isFile()) {
+            classFiles.put(file.getAbsolutePath(), file);
+        }
+    }
+
+    /**
+     * Loads the cache from a file, or starts an empty one if the file is missing, unreadable or was built for other
+     * mods.
+     */
+    @NotNull
+    static TransformerCache load(@NotNull File file, @NotNull String fingerprint) {
+        @NotNull TransformerCache cache = new TransformerCache(file, fingerprint);
+        if(fingerprint.isEmpty() || !file.isFile()) {
+            return cache;
+        }
+
+        try(@NotNull DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != FORMAT_VERSION || !fingerprint.equals(in.readUTF())) {
+                logger.info("InvTweaks: mods changed, rebuilding transformer cache");
+                cache.dirty = true;
+                return cache;
+            }
+
+            for(int i = in.readInt(); i > 0; i--) {
+                cache.plainClasses.add(in.readUTF());
+            }
+            for(int i = in.readInt(); i > 0; i--) {
+                cache.ignoredContainers.add(in.readUTF());
+            }
+            for(int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                cache.containers.put(name, readContainerInfo(in));
+            }
+        } catch(IOException | RuntimeException e) {
+            logger.warn("InvTweaks: invalid transformer cache, rebuilding it", e);
+            @NotNull TransformerCache emptyCache = new TransformerCache(file, fingerprint);
+            emptyCache.dirty = true;
+            return emptyCache;
+        }
+        return cache;
+    }
+
+    @NotNull
+    private static ContainerInfo readContainerInfo(@NotNull DataInputStream in) throws IOException {
+        @NotNull ContainerInfo info = new ContainerInfo();
+        info.showButtons = in.readBoolean();
+        info.validInventory = in.readBoolean();
+        info.validChest = in.readBoolean();
+        info.largeChest = in.readBoolean();
+        info.rowSize = in.readShort();
+        info.slotMapMethod = readMethodInfo(in);
+        info.rowSizeMethod = readMethodInfo(in);
+        info.largeChestMethod = readMethodInfo(in);
+        return info;
+    }
+
+    private static void writeContainerInfo(@NotNull DataOutputStream out, @NotNull ContainerInfo info) throws IOException {
+        out.writeBoolean(info.showButtons);
+        out.writeBoolean(info.validInventory);
+        out.writeBoolean(info.validChest);
+        out.writeBoolean(info.largeChest);
+        out.writeShort(info.rowSize);
+        writeMethodInfo(out, info.slotMapMethod);
+        writeMethodInfo(out, info.rowSizeMethod);
+        writeMethodInfo(out, info.largeChestMethod);
+    }
+
+    @Nullable
+    private static MethodInfo readMethodInfo(@NotNull DataInputStream in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+        Type methodType = Type.getMethodType(in.readUTF());
+        Type methodClass = Type.getType(in.readUTF());
+        String methodName = in.readUTF();
+        return new MethodInfo(methodType, methodClass, methodName, in.readBoolean());
+    }
+
+    private static void writeMethodInfo(@NotNull DataOutputStream out, @Nullable MethodInfo method) throws IOException {
+        out.writeBoolean(method != null);
+        if(method != null) {
+            out.writeUTF(method.methodType.getDescriptor());
+            out.writeUTF(method.methodClass.getDescriptor());
+            out.writeUTF(method.methodName);
+            out.writeBoolean(method.isStatic);
+        }
+    }
+
+    boolean isPlainClass(String name) {
+        return plainClasses.contains(name);
+    }
+
+    boolean isIgnoredContainer(String name) {
+        return ignoredContainers.contains(name);
+    }
+
+    @Nullable
+    ContainerInfo getContainer(String name) {
+        return containers.get(name);
+    }
+
+    void putPlainClass(String name) {
+        if(plainClasses.add(name)) {
+            dirty = true;
+        }
+    }
+
+    void putIgnoredContainer(String name) {
+        if(ignoredContainers.add(name)) {
+            dirty = true;
+        }
+    }
+
+    void putContainer(String name, @NotNull ContainerInfo info) {
+        containers.put(name, info);
+        dirty = true;
+    }
+
+    /**
+     * Writes the cache if anything was added since it was loaded.
+     */
+    void save() {
+        if(!dirty || fingerprint.isEmpty()) {
+            return;
+        }
+        dirty = false;
+
+        @NotNull File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if(parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent);
+            }
+
+            try(@NotNull DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(fingerprint);
+
+                // Copies, entries can still be added while saving
+                @NotNull List<String> plain = new ArrayList<>(plainClasses);
+                out.writeInt(plain.size());
+                for(String name : plain) {
+                    out.writeUTF(name);
+                }
+
+                @NotNull List<String> ignored = new ArrayList<>(ignoredContainers);
+                out.writeInt(ignored.size());
+                for(String name : ignored) {
+                    out.writeUTF(name);
+                }
+
+                @NotNull Map<String, ContainerInfo> annotated = new HashMap<>(containers);
+                out.writeInt(annotated.size());
+                for(@NotNull Map.Entry<String, ContainerInfo> entry : annotated.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeContainerInfo(out, entry.getValue());
+                }
+            }
+
+            if(file.exists() && !file.delete()) {
+                throw new IOException("Unable to replace " + file);
+            }
+            if(!tempFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tempFile);
+            }
+        } catch(IOException e) {
+            logger.warn("InvTweaks: unable to save transformer cache", e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+}
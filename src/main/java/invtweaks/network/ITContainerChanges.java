@@ -0,0 +1,93 @@
+package invtweaks.network;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.inventory.ClickType;
+import net.minecraft.inventory.Container;
+import net.minecraft.network.play.server.SPacketSetSlot;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Server-side record of the slots a player's client changed on its own (clicks replayed or layouts applied on both
+ * sides), so that only these slots are resent once the client is done, instead of the whole container.
+ * <p>
+ * Slots changed by the server are sent anyway by Container.detectAndSendChanges(), what this covers is slots where
+ * the client's prediction may be wrong. Only used from the server thread.
+ */
+public class ITContainerChanges {
+    private static final Map<EntityPlayer, ITContainerChanges> changes = new WeakHashMap<>();
+
+    private final int window;
+    @NotNull
+    private final IntSet slots = new IntOpenHashSet();
+    private boolean allSlots = false;
+
+    private ITContainerChanges(int window_) {
+        window = window_;
+    }
+
+    @NotNull
+    private static ITContainerChanges get(@NotNull EntityPlayer player, int window) {
+        ITContainerChanges playerChanges = changes.get(player);
+        if(playerChanges == null || playerChanges.window != window) {
+            @NotNull ITContainerChanges newChanges = new ITContainerChanges(window);
+            // Changes in another window can't be resent slot by slot anymore
+            newChanges.allSlots = playerChanges != null;
+            changes.put(player, newChanges);
+            playerChanges = newChanges;
+        }
+        return playerChanges;
+    }
+
+    /**
+     * Records a click done by the client. Left and right clicks only change the clicked slot (and the held stack), as
+     * do drags, any other click may change the whole container.
+     */
+    public static void markClick(@NotNull EntityPlayer player, int window, int slot, @NotNull ClickType action) {
+        @NotNull ITContainerChanges playerChanges = get(player, window);
+        if(action == ClickType.QUICK_CRAFT) {
+            // Starting and ending a drag are clicks outside of the window, only the dragged slots change
+            if(slot >= 0) {
+                playerChanges.slots.add(slot);
+            }
+        } else if(action == ClickType.PICKUP && slot >= 0) {
+            playerChanges.slots.add(slot);
+        } else {
+            playerChanges.allSlots = true;
+        }
+    }
+
+    public static void markSlot(@NotNull EntityPlayer player, int window, int slot) {
+        get(player, window).slots.add(slot);
+    }
+
+    /**
+     * Sends the current content of every recorded slot and of the held stack, then forgets about them.
+     */
+    public static void sendChanges(@NotNull EntityPlayerMP player) {
+        ITContainerChanges playerChanges = changes.remove(player);
+        Container container = player.openContainer;
+
+        if(playerChanges != null && (playerChanges.allSlots || playerChanges.window != container.windowId)) {
+            player.sendContainerToPlayer(container);
+            return;
+        }
+
+        if(playerChanges != null) {
+            int size = container.inventorySlots.size();
+            for(IntIterator it = playerChanges.slots.iterator(); it.hasNext(); ) {
+                int slot = it.nextInt();
+                if(slot < size) {
+                    player.connection.sendPacket(new SPacketSetSlot(container.windowId, slot, container.getSlot(slot).getStack()));
+                }
+            }
+        }
+        player.connection.sendPacket(new SPacketSetSlot(-1, -1, player.inventory.getItemStack()));
+    }
+}
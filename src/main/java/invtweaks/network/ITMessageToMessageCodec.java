@@ -3,8 +3,10 @@ package invtweaks.network;
 import invtweaks.InvTweaksConst;
 import invtweaks.network.packets.ITPacket;
 import invtweaks.network.packets.ITPacketClick;
+import invtweaks.network.packets.ITPacketClickBatch;
 import invtweaks.network.packets.ITPacketLogin;
 import invtweaks.network.packets.ITPacketSortComplete;
+import invtweaks.network.packets.ITPacketSortLayout;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import net.minecraftforge.fml.common.network.FMLIndexedMessageToMessageCodec;
@@ -15,6 +17,8 @@ public class ITMessageToMessageCodec extends FMLIndexedMessageToMessageCodec<ITP
         addDiscriminator(InvTweaksConst.PACKET_LOGIN, ITPacketLogin.class);
         addDiscriminator(InvTweaksConst.PACKET_CLICK, ITPacketClick.class);
         addDiscriminator(InvTweaksConst.PACKET_SORTCOMPLETE, ITPacketSortComplete.class);
+        addDiscriminator(InvTweaksConst.PACKET_CLICK_BATCH, ITPacketClickBatch.class);
+        addDiscriminator(InvTweaksConst.PACKET_SORT_LAYOUT, ITPacketSortLayout.class);
     }
 
     @Override
@@ -1,5 +1,6 @@
 package invtweaks.network.packets;
 
+import invtweaks.network.ITContainerChanges;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.inventory.ClickType;
@@ -48,6 +49,7 @@ public class ITPacketClick implements ITPacket {
 
             if(!player.isSpectator() && player.openContainer.windowId == window) {
                 player.openContainer.slotClick(slot, data, action, player);
+                ITContainerChanges.markClick(player, window, slot, action);
             }
             // TODO: Might want to set a flag to ignore all packets until next sortcomplete even if client window changes.
         }
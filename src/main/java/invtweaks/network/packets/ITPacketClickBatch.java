@@ -0,0 +1,96 @@
+package invtweaks.network.packets;
+
+import invtweaks.network.ITContainerChanges;
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.inventory.ClickType;
+import net.minecraft.network.INetHandler;
+import net.minecraft.network.NetHandlerPlayServer;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A sequence of clicks in the same window, replayed by the server in a single task. Clicks are stored as varints,
+ * which takes 3 bytes for most of them.
+ */
+public class ITPacketClickBatch implements ITPacket {
+    private static final int MAX_CLICKS = 4096;
+
+    public int window;
+    @NotNull
+    private IntList slots = new IntArrayList();
+    @NotNull
+    private IntList data = new IntArrayList();
+    @NotNull
+    private IntList actions = new IntArrayList();
+
+    @SuppressWarnings("unused")
+    public ITPacketClickBatch() {
+    }
+
+    public ITPacketClickBatch(int _window) {
+        window = _window;
+    }
+
+    public void addClick(int slot, int data_, @NotNull ClickType action) {
+        slots.add(slot);
+        data.add(data_);
+        actions.add(action.ordinal());
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public boolean isFull() {
+        return slots.size() >= MAX_CLICKS;
+    }
+
+    @Override
+    public void readBytes(@NotNull ByteBuf bytes) {
+        window = bytes.readByte();
+        int count = ByteBufUtils.readVarInt(bytes, 5);
+        if(count < 0 || count > MAX_CLICKS) {
+            throw new IllegalArgumentException("Invalid click count: " + count);
+        }
+        for(int i = 0; i < count; i++) {
+            slots.add(ByteBufUtils.readVarInt(bytes, 5));
+            data.add(ByteBufUtils.readVarInt(bytes, 5));
+            actions.add(ByteBufUtils.readVarInt(bytes, 1));
+        }
+    }
+
+    @Override
+    public void writeBytes(@NotNull ByteBuf bytes) {
+        bytes.writeByte(window);
+        ByteBufUtils.writeVarInt(bytes, slots.size(), 5);
+        for(int i = 0; i < slots.size(); i++) {
+            ByteBufUtils.writeVarInt(bytes, slots.getInt(i), 5);
+            ByteBufUtils.writeVarInt(bytes, data.getInt(i), 5);
+            ByteBufUtils.writeVarInt(bytes, actions.getInt(i), 1);
+        }
+    }
+
+    @Override
+    public void handle(INetHandler handler) {
+        if(handler instanceof NetHandlerPlayServer) {
+            @NotNull NetHandlerPlayServer serverHandler = (NetHandlerPlayServer) handler;
+            EntityPlayerMP player = serverHandler.player;
+            ClickType[] clickTypes = ClickType.values();
+
+            for(int i = 0; i < slots.size(); i++) {
+                // Checked for each click, in case one of them closes the window
+                if(player.isSpectator() || player.openContainer.windowId != window) {
+                    break;
+                }
+                int action = actions.getInt(i);
+                if(action >= 0 && action < clickTypes.length) {
+                    player.openContainer.slotClick(slots.getInt(i), data.getInt(i), clickTypes[action], player);
+                    ITContainerChanges.markClick(player, window, slots.getInt(i), clickTypes[action]);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package invtweaks.network.packets;
 
+import invtweaks.network.ITContainerChanges;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.INetHandler;
@@ -23,7 +24,7 @@ public class ITPacketSortComplete implements ITPacket {
             @NotNull NetHandlerPlayServer serverHandler = (NetHandlerPlayServer) handler;
             EntityPlayerMP player = serverHandler.player;
 
-            player.sendContainerToPlayer(player.openContainer);
+            ITContainerChanges.sendChanges(player);
         }
     }
 }
@@ -0,0 +1,211 @@
+package invtweaks.network.packets;
+
+import invtweaks.network.ITContainerChanges;
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.inventory.Container;
+import net.minecraft.inventory.Slot;
+import net.minecraft.item.ItemStack;
+import net.minecraft.network.INetHandler;
+import net.minecraft.network.NetHandlerPlayServer;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
+import net.minecraftforge.items.SlotItemHandler;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The outcome of a sort: merges between stacks, then the slot each remaining stack goes to. Applied to the slots
+ * directly by both sides, so sorting doesn't depend on the number of clicks it would take.
+ */
+public class ITPacketSortLayout implements ITPacket {
+    private static final int MAX_SLOTS = 4096;
+
+    public int window;
+    /**
+     * Container slot numbers of the sorted section. Merges and destinations use indexes in this array.
+     */
+    @NotNull
+    private int[] slotNumbers = new int[0];
+    @NotNull
+    private IntList mergeSources = new IntArrayList();
+    @NotNull
+    private IntList mergeDestinations = new IntArrayList();
+    /**
+     * For each slot, the index its stack goes to once merges are done, or -1 if it's empty by then.
+     */
+    @NotNull
+    private int[] destinations = new int[0];
+
+    @SuppressWarnings("unused")
+    public ITPacketSortLayout() {
+    }
+
+    public ITPacketSortLayout(int _window, @NotNull int[] _slotNumbers, @NotNull IntList _mergeSources, @NotNull IntList _mergeDestinations, @NotNull int[] _destinations) {
+        window = _window;
+        slotNumbers = _slotNumbers;
+        mergeSources = _mergeSources;
+        mergeDestinations = _mergeDestinations;
+        destinations = _destinations;
+    }
+
+    /**
+     * Only plain storage slots can be written to directly: output slots consume ingredients or payment in
+     * Slot.onTake(), which putStack() doesn't call.
+     */
+    public static boolean isStorageSlot(@NotNull Slot slot) {
+        return slot.getClass() == Slot.class || slot.getClass() == SlotItemHandler.class;
+    }
+
+    private static boolean areSameItem(@NotNull ItemStack stack1, @NotNull ItemStack stack2) {
+        return !stack1.isEmpty() && !stack2.isEmpty() && stack1.getItem() == stack2.getItem() && stack1.getMetadata() == stack2.getMetadata() && ItemStack.areItemStackTagsEqual(stack1, stack2);
+    }
+
+    @Override
+    public void readBytes(@NotNull ByteBuf bytes) {
+        window = bytes.readByte();
+
+        int size = ByteBufUtils.readVarInt(bytes, 5);
+        if(size < 0 || size > MAX_SLOTS) {
+            throw new IllegalArgumentException("Invalid slot count: " + size);
+        }
+        slotNumbers = new int[size];
+        destinations = new int[size];
+        for(int i = 0; i < size; i++) {
+            slotNumbers[i] = ByteBufUtils.readVarInt(bytes, 5);
+        }
+
+        int merges = ByteBufUtils.readVarInt(bytes, 5);
+        // Each merge takes at least 2 bytes
+        if(merges < 0 || merges > bytes.readableBytes() / 2) {
+            throw new IllegalArgumentException("Invalid merge count: " + merges);
+        }
+        for(int i = 0; i < merges; i++) {
+            mergeSources.add(ByteBufUtils.readVarInt(bytes, 5));
+            mergeDestinations.add(ByteBufUtils.readVarInt(bytes, 5));
+        }
+
+        for(int i = 0; i < size; i++) {
+            destinations[i] = ByteBufUtils.readVarInt(bytes, 5) - 1;
+        }
+    }
+
+    @Override
+    public void writeBytes(@NotNull ByteBuf bytes) {
+        bytes.writeByte(window);
+
+        ByteBufUtils.writeVarInt(bytes, slotNumbers.length, 5);
+        for(int slotNumber : slotNumbers) {
+            ByteBufUtils.writeVarInt(bytes, slotNumber, 5);
+        }
+
+        ByteBufUtils.writeVarInt(bytes, mergeSources.size(), 5);
+        for(int i = 0; i < mergeSources.size(); i++) {
+            ByteBufUtils.writeVarInt(bytes, mergeSources.getInt(i), 5);
+            ByteBufUtils.writeVarInt(bytes, mergeDestinations.getInt(i), 5);
+        }
+
+        for(int destination : destinations) {
+            ByteBufUtils.writeVarInt(bytes, destination + 1, 5);
+        }
+    }
+
+    /**
+     * Checks the layout against the player's open container and applies it. Nothing is changed unless the whole layout
+     * is valid: slots exist, merges only involve stacks of the same item, every slot that changes is a plain storage
+     * slot, every stack has exactly one destination that accepts it, and no item is held.
+     *
+     * @return true if the layout was applied.
+     */
+    public boolean apply(@NotNull EntityPlayer player) {
+        Container container = player.openContainer;
+        if(player.isSpectator() || container == null || container.windowId != window || !player.inventory.getItemStack().isEmpty()) {
+            return false;
+        }
+
+        int size = slotNumbers.length;
+        if(destinations.length != size) {
+            return false;
+        }
+
+        @NotNull Slot[] slots = new Slot[size];
+        @NotNull ItemStack[] stacks = new ItemStack[size];
+        @NotNull boolean[] usedSlots = new boolean[container.inventorySlots.size()];
+        for(int i = 0; i < size; i++) {
+            int slotNumber = slotNumbers[i];
+            if(slotNumber < 0 || slotNumber >= usedSlots.length || usedSlots[slotNumber]) {
+                return false;
+            }
+            usedSlots[slotNumber] = true;
+            slots[i] = container.getSlot(slotNumber);
+            stacks[i] = slots[i].getStack().copy();
+        }
+
+        // Work on copies first, so that an invalid layout leaves the container untouched
+        for(int k = 0; k < mergeSources.size(); k++) {
+            int from = mergeSources.getInt(k), to = mergeDestinations.getInt(k);
+            if(from < 0 || from >= size || to < 0 || to >= size || from == to) {
+                return false;
+            }
+            @NotNull ItemStack source = stacks[from], destination = stacks[to];
+            if(!areSameItem(source, destination) || !isStorageSlot(slots[from]) || !isStorageSlot(slots[to]) || !slots[from].canTakeStack(player)) {
+                return false;
+            }
+            int limit = Math.min(destination.getMaxStackSize(), slots[to].getItemStackLimit(source));
+            int amount = Math.min(source.getCount(), limit - destination.getCount());
+            if(amount > 0) {
+                destination.grow(amount);
+                source.shrink(amount);
+                if(source.isEmpty()) {
+                    stacks[from] = ItemStack.EMPTY;
+                }
+            }
+        }
+
+        @NotNull ItemStack[] result = new ItemStack[size];
+        for(int i = 0; i < size; i++) {
+            result[i] = ItemStack.EMPTY;
+        }
+        for(int i = 0; i < size; i++) {
+            int destination = destinations[i];
+            if(destination == -1) {
+                if(!stacks[i].isEmpty()) {
+                    return false;
+                }
+                continue;
+            }
+            if(destination < 0 || destination >= size || stacks[i].isEmpty() || !result[destination].isEmpty()) {
+                return false;
+            }
+            if(destination != i && (!isStorageSlot(slots[i]) || !isStorageSlot(slots[destination]) || !slots[i].canTakeStack(player) || !slots[destination].isItemValid(stacks[i]) || stacks[i].getCount() > slots[destination].getItemStackLimit(stacks[i]))) {
+                return false;
+            }
+            result[destination] = stacks[i];
+        }
+
+        for(int i = 0; i < size; i++) {
+            if(!ItemStack.areItemStacksEqual(slots[i].getStack(), result[i])) {
+                slots[i].putStack(result[i]);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void handle(INetHandler handler) {
+        if(handler instanceof NetHandlerPlayServer) {
+            @NotNull NetHandlerPlayServer serverHandler = (NetHandlerPlayServer) handler;
+            EntityPlayerMP player = serverHandler.player;
+
+            if(apply(player)) {
+                for(int slotNumber : slotNumbers) {
+                    ITContainerChanges.markSlot(player, window, slotNumber);
+                }
+            } else {
+                // The client already applied it on its side, so undo that
+                player.sendContainerToPlayer(player.openContainer);
+            }
+        }
+    }
+}